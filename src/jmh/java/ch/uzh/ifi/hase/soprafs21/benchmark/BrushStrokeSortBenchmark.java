@@ -0,0 +1,70 @@
+package ch.uzh.ifi.hase.soprafs21.benchmark;
+
+import ch.uzh.ifi.hase.soprafs21.entity.BrushStroke;
+import ch.uzh.ifi.hase.soprafs21.helper.Standard;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorting a drawing of 10k brush strokes, once with the comparison BrushStroke used to do (a new formatter
+ * and two parsed time stamps per comparison) and once with the primitive keys it compares now.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BrushStrokeSortBenchmark {
+
+    private static final int STROKES = 10_000;
+
+    // how BrushStroke.compareTo used to order strokes
+    private static final Comparator<BrushStroke> PARSING_ORDER = (a, b) -> {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss:SSS");
+        LocalDateTime thisTime = LocalDateTime.parse(a.getTimeStamp(), formatter);
+        LocalDateTime otherTime = LocalDateTime.parse(b.getTimeStamp(), formatter);
+        return thisTime.compareTo(otherTime);
+    };
+
+    private List<BrushStroke> drawing;
+
+    @Setup
+    public void setup() {
+        // a drawing of about three minutes, strokes arrive slightly out of order like in a batch
+        Standard standard = new Standard();
+        long start = standard.toEpochMilli(LocalDateTime.of(2021, 5, 17, 14, 0));
+        Random random = new Random(42);
+        drawing = new ArrayList<>(STROKES);
+        for (int i = 0; i < STROKES; i++) {
+            long time = start + i * 18L + random.nextInt(50);
+            drawing.add(new BrushStroke(random.nextInt(800), random.nextInt(600), 4, "BLACK", time));
+        }
+        Collections.shuffle(drawing, random);
+    }
+
+    @Benchmark
+    public List<BrushStroke> sortByParsedTimeStamp() {
+        List<BrushStroke> sorted = new ArrayList<>(drawing);
+        sorted.sort(PARSING_ORDER);
+        return sorted;
+    }
+
+    @Benchmark
+    public List<BrushStroke> sortByTimeKey() {
+        List<BrushStroke> sorted = new ArrayList<>(drawing);
+        Collections.sort(sorted);
+        return sorted;
+    }
+}
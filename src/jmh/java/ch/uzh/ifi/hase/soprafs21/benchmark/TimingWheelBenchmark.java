@@ -0,0 +1,67 @@
+package ch.uzh.ifi.hase.soprafs21.benchmark;
+
+import ch.uzh.ifi.hase.soprafs21.helper.Standard;
+import ch.uzh.ifi.hase.soprafs21.helper.TimingWheel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 50k games waiting for the end of their phase on one timing wheel. Every invocation of tick moves the clock of
+ * the wheel one tick forward and fires the deadlines that are due, each of them arms the next phase of its game
+ * right away, so the number of waiting games stays the same. Sampled, the percentiles of tick are the latency and
+ * the jitter of a tick (how much a slow tick delays the deadlines in it).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TimingWheelBenchmark {
+
+    private static final int GAMES = 50_000;
+    private static final int MIN_PHASE = 5_000; // [ms] shortest phase
+    private static final int MAX_PHASE = 70_000; // [ms] selecting plus the longest drawing time
+
+    private final Random random = new Random(42);
+    private long tickNanos;
+    private long now = 0; // [ns] the clock of the wheel, moved by the benchmark only
+    private TimingWheel timingWheel;
+    private TimingWheel.Timeout[] phases;
+
+    @Setup
+    public void setup() {
+        Standard standard = new Standard();
+        tickNanos = TimeUnit.MILLISECONDS.toNanos(standard.getWheelTick());
+        timingWheel = new TimingWheel(standard.getWheelTick(), standard.getWheelSize(), Runnable::run, () -> now);
+        phases = new TimingWheel.Timeout[GAMES];
+        for (int game = 0; game < GAMES; game++) {
+            armPhase(game);
+        }
+    }
+
+    // the game waits for the end of its next phase
+    private void armPhase(int game) {
+        phases[game] = timingWheel.schedule(() -> armPhase(game), MIN_PHASE + random.nextInt(MAX_PHASE - MIN_PHASE));
+    }
+
+    @Benchmark
+    public int tick() {
+        now += tickNanos;
+        return timingWheel.advance(timingWheel.elapsedMillis());
+    }
+
+    // a player guessed the word, the game cancels its deadline and waits for the next phase
+    @Benchmark
+    public int endPhaseEarly() {
+        int game = random.nextInt(GAMES);
+        phases[game].cancel();
+        armPhase(game);
+        return timingWheel.size();
+    }
+}
@@ -0,0 +1,24 @@
+package ch.uzh.ifi.hase.soprafs21.constant;
+
+public enum BotMessage {
+    CURRENT_DRAWER("The current drawer is ", "."),
+    SOLUTION("The correct word was ", "."),
+    ENTERED_LOBBY("", " has entered the lobby."),
+    LEFT_LOBBY("", " has left the lobby."),
+    LEFT_GAME("", " has left the game."),
+    GUESSED_WORD("", " has guessed the word.");
+
+    private final String prefix; // the text before the name or word
+    private final String suffix; // the text after it
+
+    BotMessage(String prefix, String suffix) {
+        this.prefix = prefix;
+        this.suffix = suffix;
+    }
+
+    // the text of the message for a name or word, built in one go
+    public String format(String argument) {
+        return new StringBuilder(prefix.length() + argument.length() + suffix.length())
+                .append(prefix).append(argument).append(suffix).toString();
+    }
+}
@@ -1,11 +1,33 @@
 package ch.uzh.ifi.hase.soprafs21.constant;
 
 public enum Colours {
-    BLACK, ORANGERED, CRIMSON,
-    DARKORCHID, MEDIUMPURPLE, STATEBLUE,
-    LIGHTSKYBLUE, DEEPSKYBLUE, SKYBLUE,
-    AQUAMARINE, SEAGREEN, YELLOWGREEN,
-    KHAKI, YELLOW, GOLD,
-    ORANGE, DARKORANGE, BROWN,
-    LIGHTGREY, DARKGREY, WHITE;
+    BLACK(0x000000), ORANGERED(0xFF4500), CRIMSON(0xDC143C),
+    DARKORCHID(0x9932CC), MEDIUMPURPLE(0x9370DB), STATEBLUE(0x6A5ACD),
+    LIGHTSKYBLUE(0x87CEFA), DEEPSKYBLUE(0x00BFFF), SKYBLUE(0x87CEEB),
+    AQUAMARINE(0x7FFFD4), SEAGREEN(0x2E8B57), YELLOWGREEN(0x9ACD32),
+    KHAKI(0xF0E68C), YELLOW(0xFFFF00), GOLD(0xFFD700),
+    ORANGE(0xFFA500), DARKORANGE(0xFF8C00), BROWN(0xA52A2A),
+    LIGHTGREY(0xD3D3D3), DARKGREY(0xA9A9A9), WHITE(0xFFFFFF);
+
+    private final int rgb; // the colour as 0xRRGGBB, used when the server draws a picture itself
+
+    Colours(int rgb) { this.rgb = rgb; }
+
+    public int getRgb() { return this.rgb; }
+
+    // the rgb value of a colour sent by a client, either the name of one of ours or #RRGGBB (black if unknown)
+    public static int toRgb(String colour) {
+        if (colour == null) {
+            return BLACK.getRgb();
+        }
+        for (Colours value : values()) {
+            if (value.name().equalsIgnoreCase(colour)) {
+                return value.getRgb();
+            }
+        }
+        if (colour.matches("#[0-9a-fA-F]{6}")) {
+            return Integer.parseInt(colour.substring(1), 16);
+        }
+        return BLACK.getRgb();
+    }
 }
@@ -0,0 +1,5 @@
+package ch.uzh.ifi.hase.soprafs21.constant;
+
+public enum GamePhase {
+    NEW_ROUND, NEXT_DRAWER, SELECTING, DRAWING, REVEALING, DONE;
+}
@@ -1,7 +1,11 @@
 package ch.uzh.ifi.hase.soprafs21.controller;
 
+import ch.uzh.ifi.hase.soprafs21.constant.BotMessage;
 import ch.uzh.ifi.hase.soprafs21.entity.*;
+import ch.uzh.ifi.hase.soprafs21.helper.DrawingSnapshot;
+import ch.uzh.ifi.hase.soprafs21.helper.LiveDrawing;
 import ch.uzh.ifi.hase.soprafs21.helper.Standard;
+import ch.uzh.ifi.hase.soprafs21.helper.StrokeCodec;
 import ch.uzh.ifi.hase.soprafs21.helper.TimeStamp;
 import ch.uzh.ifi.hase.soprafs21.rest.dto.*;
 
@@ -9,15 +13,19 @@ import ch.uzh.ifi.hase.soprafs21.rest.mapper.*;
 import ch.uzh.ifi.hase.soprafs21.service.*;
 
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 
-import static ch.uzh.ifi.hase.soprafs21.constant.RoundStatus.DRAWING;
 import static ch.uzh.ifi.hase.soprafs21.constant.RoundStatus.SELECTING;
 
 @RestController
@@ -29,14 +37,16 @@ public class GameController {
     private final LobbyService lobbyService;
     private final ChatService chatService;
     private final TimerService timerService;
+    private final ScoreBoardService scoreBoardService;
 
-    GameController(GameService gameService, RoundService roundService, DrawingService drawingService, LobbyService lobbyService, ChatService chatService, TimerService timerService) {
+    GameController(GameService gameService, RoundService roundService, DrawingService drawingService, LobbyService lobbyService, ChatService chatService, TimerService timerService, ScoreBoardService scoreBoardService) {
         this.gameService = gameService;
         this.roundService = roundService;
         this.drawingService = drawingService;
         this.lobbyService = lobbyService;
         this.chatService = chatService;
         this.timerService = timerService;
+        this.scoreBoardService = scoreBoardService;
     }
 
     // API call to create a game from the lobby (requires to be in a lobby first, lobby owner only)
@@ -66,10 +76,15 @@ public class GameController {
     }
 */
     // API call to get a newer version of the game that you are in
+    // answered with 304 and no body if the client sends the ETag of the current version in If-None-Match
     @GetMapping("/games/{gameId}")
-    @ResponseStatus(HttpStatus.OK)
     @ResponseBody
-    public GameGetDTO getGame(@PathVariable Long gameId) {
+    public GameGetDTO getGame(@PathVariable Long gameId, WebRequest request) {
+        Long version = gameService.getGameVersion(gameId);
+        if (version != null && request.checkNotModified("game-" + version)) {
+            return null; // the client is up to date, nothing is loaded or mapped
+        }
+
         // copy the input into a game visible for all players threw the repository
         Game foundGame = gameService.getGame(gameId);
 
@@ -83,28 +98,62 @@ public class GameController {
     @ResponseStatus(HttpStatus.NO_CONTENT)
     @ResponseBody
     public void addBrushStrokes(@RequestBody List<BrushStrokePutDTO> brushStrokeListDTO, @PathVariable long gameId) {
-        // get the correct game and drawing in which we need to save all the brushstrokes
-        Game game = gameService.getGame(gameId);
-        Round round = roundService.getRound(game.getRoundId());
-
         // convert each and every API brush stroke to an internal representation
         BrushStroke temp;
         ArrayList<BrushStroke> brushStrokeList = new ArrayList<>();
         for (BrushStrokePutDTO preBrushStroke : brushStrokeListDTO) {
-            temp = BrushStrokeDTOMapper.INSTANCE.convertBrushStrokePutDTOtoEntity(preBrushStroke);
+            try {
+                temp = BrushStrokeDTOMapper.INSTANCE.convertBrushStrokePutDTOtoEntity(preBrushStroke);
+            }
+            catch (IllegalArgumentException e) { // a missing or unreadable time stamp
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+            }
             brushStrokeList.add(temp);
         }
-        drawingService.addStrokes(round.getCurrentDrawing(),brushStrokeList);
 
+        storeBrushStrokes(gameId, brushStrokeList);
+    }
+
+    // pass compactly encoded information to the right picture (opt-in with the content type application/x-stroke-bin)
+    @PutMapping(value = "/games/{gameId}/drawing", consumes = StrokeCodec.MEDIA_TYPE)
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    @ResponseBody
+    public void addBrushStrokesBinary(@RequestBody byte[] brushStrokeBytes, @PathVariable long gameId) {
+        ArrayList<BrushStroke> brushStrokeList;
+        try {
+            brushStrokeList = StrokeCodec.decodeBatch(brushStrokeBytes);
+        }
+        catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        storeBrushStrokes(gameId, brushStrokeList);
+    }
+
+    // save the brush strokes in the live drawing of the game, strokes that come in after the DRAWING phase are rejected
+    private void storeBrushStrokes(long gameId, ArrayList<BrushStroke> brushStrokeList) {
+        // while the game is drawing the strokes only go into memory
+        LiveDrawing liveDrawing = drawingService.getLiveDrawing(gameId);
+        if (liveDrawing == null || drawingService.addStrokes(liveDrawing, brushStrokeList) < 0) {
+            // the current drawing of the round may already belong to the next painter
+            String drawingClosed = "The drawing phase of this game is over, the brush strokes came in too late.";
+            throw new ResponseStatusException(HttpStatus.CONFLICT, drawingClosed);
+        }
     }
 
     // TODO #42 test and refine mapping for API-calls requesting the drawing
     @PostMapping("/games/{gameId}/drawing")
-    @ResponseStatus(HttpStatus.CREATED)
     @ResponseBody
-    public ArrayList<DrawingGetDTO> drawingRequest(@RequestBody TimeStringGetDTO timeStringGetDTO, @PathVariable Long gameId) {
+    public ResponseEntity<?> drawingRequest(@RequestBody TimeStringGetDTO timeStringGetDTO, @PathVariable Long gameId) {
         TimeStamp timeStamp = TimeDTOMapper.INSTANCE.convertTimeStringGeTDTOtoEntity(timeStringGetDTO);
 
+        LiveDrawing liveDrawing = drawingService.getLiveDrawing(gameId);
+        if (liveDrawing != null) { // answer from memory while the game is drawing, shared with everybody asking the same
+            // this endpoint is only kept for clients that ask by time, the others resume by sequence (GET /games/{gameId}/drawing)
+            long after = liveDrawing.getSequenceAtTime(new Standard().toEpochMilli(timeStamp.getTimeObject()));
+            byte[] value = drawingService.getSerializedStrokesAfter(liveDrawing, after, DrawingService.STROKES_JSON);
+            return ResponseEntity.status(HttpStatus.CREATED).contentType(MediaType.APPLICATION_JSON).body(value);
+        }
+
         Game game = gameService.getGame(gameId);
         Round round = roundService.getRound(game.getRoundId());
         List<BrushStroke> drawings = drawingService.getDrawing(round.getCurrentDrawing(),timeStamp.getTimeObject());
@@ -113,7 +162,103 @@ public class GameController {
             value.add(DrawingDTOMapper.INSTANCE.convertEntityToDrawingGetDTO(i));
         }
         System.out.println("length of Brushstrockes"+value.size());
-        return value;
+        return ResponseEntity.status(HttpStatus.CREATED).body(value);
+    }
+
+    /** API-call for the brush strokes of the current drawing after a sequence cursor
+     * @param gameId = the id of the game whose current drawing is requested
+     * @param after = the cursor returned by the previous call, 0 to get the whole drawing
+     * @return the brush strokes strictly after the cursor and the cursor for the next call
+     */
+    @GetMapping("/games/{gameId}/drawing")
+    @ResponseBody
+    public ResponseEntity<?> drawingDeltaRequest(@PathVariable Long gameId, @RequestParam(defaultValue = "0") long after) {
+        LiveDrawing liveDrawing = drawingService.getLiveDrawing(gameId);
+        if (liveDrawing != null) { // answer from memory while the game is drawing, shared with everybody asking the same
+            byte[] value = drawingService.getSerializedStrokesAfter(liveDrawing, after, DrawingService.DELTA_JSON);
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(value);
+        }
+
+        DrawingDeltaGetDTO value = new DrawingDeltaGetDTO();
+        for (BrushStroke i : getStrokesAfter(gameId, after, value)) {
+            value.getBrushStrokes().add(DrawingDTOMapper.INSTANCE.convertEntityToDrawingGetDTO(i));
+        }
+        return ResponseEntity.ok(value);
+    }
+
+    // the same as drawingDeltaRequest, compactly encoded (opt-in with the accept header application/x-stroke-bin)
+    @GetMapping(value = "/games/{gameId}/drawing", produces = StrokeCodec.MEDIA_TYPE)
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public byte[] drawingDeltaBinaryRequest(@PathVariable Long gameId, @RequestParam(defaultValue = "0") long after) {
+        LiveDrawing liveDrawing = drawingService.getLiveDrawing(gameId);
+        if (liveDrawing != null) {
+            return drawingService.getSerializedStrokesAfter(liveDrawing, after, DrawingService.DELTA_BINARY);
+        }
+
+        DrawingDeltaGetDTO delta = new DrawingDeltaGetDTO();
+        List<BrushStroke> brushStrokes = getStrokesAfter(gameId, after, delta);
+        return StrokeCodec.encodeDelta(delta.getDrawingId(), delta.getCursor(), brushStrokes);
+    }
+
+    // get the brush strokes of the current drawing after the cursor and fill in the drawing id and next cursor
+    private List<BrushStroke> getStrokesAfter(Long gameId, long after, DrawingDeltaGetDTO delta) {
+        Game game = gameService.getGame(gameId);
+        Round round = roundService.getRound(game.getRoundId());
+        Drawing drawing = round.getCurrentDrawing();
+        List<BrushStroke> brushStrokes = drawingService.getStrokesAfter(drawing, after);
+        delta.setDrawingId(drawing.getId());
+        delta.setCursor(drawing.getLastSequence());
+        return brushStrokes;
+    }
+
+    /** API-call to stream the current drawing as server-sent events instead of polling for it
+     * @param gameId = the id of the game whose drawing is streamed
+     * @param after = the last sequence number the client already has (of the drawing given with drawingId)
+     * @param drawingId = the drawing the client already has strokes of
+     * @param lastEventId = set by the browser when it reconnects, takes precedence over after and drawingId
+     * @return a stream of drawing events, each one with the new strokes, the drawing id and the next cursor
+     */
+    @GetMapping(value = "/games/{gameId}/drawing/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter drawingStream(@PathVariable Long gameId, @RequestParam(defaultValue = "0") long after,
+                                    @RequestParam(required = false) Long drawingId,
+                                    @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        Game game = gameService.getGame(gameId);
+
+        // the event id is <drawing id>-<sequence>, see DrawingService.getEventId
+        if (lastEventId != null && lastEventId.matches("\\d{1,18}-\\d{1,18}")) {
+            String[] parts = lastEventId.split("-");
+            drawingId = Long.parseLong(parts[0]);
+            after = Long.parseLong(parts[1]);
+        }
+
+        Drawing drawing = null;
+        if (drawingService.getLiveDrawing(gameId) == null && game.getRoundId() != null) {
+            drawing = roundService.getRound(game.getRoundId()).getCurrentDrawing();
+        }
+        return drawingService.subscribe(gameId, drawing, drawingId, after);
+    }
+
+    /** API-call for a picture of the drawing, a client that joins late or reconnects shows it and then only asks
+     * for the strokes after the sequence in the X-Drawing-Sequence header.
+     * @param gameId = the id of the game of which we would like to see the drawing
+     * @return the drawing as PNG with the headers X-Drawing-Id and X-Drawing-Sequence
+     */
+    @GetMapping(value = "/games/{gameId}/drawing/snapshot", produces = MediaType.IMAGE_PNG_VALUE)
+    @ResponseBody
+    public ResponseEntity<byte[]> drawingSnapshot(@PathVariable Long gameId) {
+        Game game = gameService.getGame(gameId);
+
+        Drawing drawing = null;
+        if (drawingService.getLiveDrawing(gameId) == null && game.getRoundId() != null) {
+            drawing = roundService.getRound(game.getRoundId()).getCurrentDrawing();
+        }
+        DrawingSnapshot snapshot = drawingService.getSnapshot(gameId, drawing);
+        return ResponseEntity.ok()
+                .contentType(MediaType.IMAGE_PNG)
+                .header("X-Drawing-Id", String.valueOf(snapshot.getDrawingId()))
+                .header("X-Drawing-Sequence", String.valueOf(snapshot.getSequence()))
+                .body(snapshot.getPng());
     }
 
     // (Issue #44) API-call for requesting the letter-count
@@ -130,10 +275,14 @@ public class GameController {
      * @param gameId = the id of the game we would like have the score as it stands
      * @return a DTO object with the sorted list of players, their respective ranking and score
      */
+    // answered with 304 and no body if the client sends the ETag of the current version in If-None-Match
     @GetMapping("/games/{gameId}/score")
-    @ResponseStatus(HttpStatus.OK)
     @ResponseBody
-    public ScoreBoardGetDTO getScore(@PathVariable Long gameId) {
+    public ScoreBoardGetDTO getScore(@PathVariable Long gameId, WebRequest request) {
+        Long version = scoreBoardService.getScoreBoardVersion(gameId);
+        if (version != null && request.checkNotModified("score-" + version)) {
+            return null; // the client is up to date, nothing is loaded or mapped
+        }
         Game game = gameService.getGame(gameId);
         ScoreBoard score = game.getScoreBoard();
         return ScoreBoardDTOMapper.INSTANCE.convertEntityToScoreBoardGetDTO(score);
@@ -220,18 +369,107 @@ public class GameController {
      * @return a DTO object that contains all the information
      */
     @GetMapping("/games/{gameId}/update")
+    @ResponseBody
+    public RoundGetDTO update(@PathVariable Long gameId, WebRequest request) {
+        // the round and the end of the phase make up the answer, the ETag covers both
+        Long version = roundService.getRoundVersion(gameId);
+        Timer timer = timerService.getLiveTimer(gameId, null);
+        String deadline = timer == null ? "saved" : String.valueOf(timer.getDeadline());
+        if (version != null && request.checkNotModified("round-" + version + "-" + deadline)) {
+            return null; // the client is up to date, nothing is loaded or mapped
+        }
+        return getUpdate(gameId);
+    }
+
+    /** Long-poll variant of the update, the request is only answered once the state of the game is newer than the
+     * version the client has or the wait is over. The version of the answer is in the X-State-Version header,
+     * the client passes it on with the next poll.
+     * @param gameId = the id of the game the round is associated with
+     * @param version = the version of the state the client has already seen (0 if none)
+     * @param waitMs = [ms] how long the request may wait for a change
+     * @return a DTO object that contains all the information, once there is something new
+     */
+    @GetMapping(value = "/games/{gameId}/update", params = "version")
+    @ResponseBody
+    public DeferredResult<ResponseEntity<RoundGetDTO>> awaitUpdate(@PathVariable Long gameId, @RequestParam long version,
+                                                                   @RequestParam(defaultValue = "25000") long waitMs) {
+        return gameService.awaitChange(gameId, version, waitMs, () -> {
+            long current = gameService.getStateVersion(gameId); // read first, a change while building is picked up by the next poll
+            RoundGetDTO update = getUpdate(gameId);
+            return ResponseEntity.ok().header("X-State-Version", String.valueOf(current)).body(update);
+        });
+    }
+
+    /** API-call for the whole state of a running game in one answer, instead of asking for the update, the score,
+     * the length, the drawing and the chat one after another. The game and its round are only loaded once.
+     * @param gameId = the id of the game
+     * @param after = the cursor of the drawing from the previous call, 0 to get the whole drawing
+     * @param since = the time stamp of the newest chat message the client has, without it all messages are sent
+     * @param chatAfter = the cursor of the chat from the previous call, used instead of since when it is given
+     * @return a DTO object with the round, the scoreboard, the length of the word, the new strokes and the new messages
+     */
+    @GetMapping("/games/{gameId}/state")
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
-    public RoundGetDTO update(@PathVariable Long gameId) {
+    public GameStateGetDTO getState(@PathVariable Long gameId, @RequestParam(defaultValue = "0") long after,
+                                    @RequestParam(required = false) String since,
+                                    @RequestParam(required = false) Long chatAfter) {
+        GameStateGetDTO value = new GameStateGetDTO();
+        value.setStateVersion(gameService.getStateVersion(gameId)); // read first, a change while building is picked up by the next call
+
+        Game game = gameService.getGame(gameId);
+        Round round = roundService.getRound(game.getRoundId());
+        value.setRound(toUpdate(game, round));
+        value.setScoreBoard(ScoreBoardDTOMapper.INSTANCE.convertEntityToScoreBoardGetDTO(game.getScoreBoard()));
+        if (round.getStatus() != SELECTING && round.getWord() != null) {
+            value.setWordLength(roundService.getLength(round));
+        }
+
+        // the strokes come from memory while the game is drawing
+        DrawingDeltaGetDTO delta = new DrawingDeltaGetDTO();
+        List<BrushStroke> brushStrokes = new ArrayList<>();
+        LiveDrawing liveDrawing = drawingService.getLiveDrawing(gameId);
+        if (liveDrawing != null) {
+            delta.setDrawingId(liveDrawing.getDrawingId());
+            delta.setCursor(liveDrawing.getLastSequence());
+            brushStrokes = liveDrawing.getStrokesAfter(after);
+        } else if (round.getIndex() < round.getDrawings().size()) {
+            Drawing drawing = round.getCurrentDrawing();
+            delta.setDrawingId(drawing.getId());
+            delta.setCursor(drawing.getLastSequence());
+            brushStrokes = drawingService.getStrokesAfter(drawing, after);
+        }
+        for (BrushStroke brushStroke : brushStrokes) {
+            delta.getBrushStrokes().add(DrawingDTOMapper.INSTANCE.convertEntityToDrawingGetDTO(brushStroke));
+        }
+        value.setDrawing(delta);
+
+        Chat chat;
+        if (chatAfter != null) {
+            chat = chatService.getMessagesAfter(gameId, chatAfter);
+        } else {
+            chat = since == null ? chatService.getChat(gameId) : chatService.getNewMessages(gameId, since);
+        }
+        value.setChat(ChatDTOMapper.INSTANCE.convertEntityToChatGetDTO(chat));
+        return value;
+    }
+
+    // the round of a game as the clients see it
+    private RoundGetDTO getUpdate(Long gameId) {
         Game game = gameService.getGame(gameId); // find the right game
         Round round = roundService.getRound(game.getRoundId()); // get the currently active round
+        return toUpdate(game, round);
+    }
+
+    private RoundGetDTO toUpdate(Game game, Round round) {
+        Long gameId = game.getId();
 
         // get and add the choices for this selection phase
         ArrayList<String> choices = roundService.getChoices(round, round.getDrawerName());
         round.setSelection(choices);
 
-        // calculate when this current phase will end
-        String end = timerService.getEnd(game.getTimer());
+        // calculate when this current phase will end, a running game has its timer in memory
+        String end = timerService.getEnd(timerService.getLiveTimer(gameId, game.getTimer()));
         round.setEndsAt(end);
 
         return RoundDTOMapper.INSTANCE.convertEntityToRoundGetDTO(round);
@@ -250,25 +488,63 @@ public class GameController {
         return ChatDTOMapper.INSTANCE.convertEntityToChatGetDTO(newMessages);
     }
 
+    /** API-call for the messages of the game chat after a cursor, the cheaper way to poll the chat
+     * @param gameId = the id of the game
+     * @param after = the cursor of the chat from the previous call, 0 to get the whole chat
+     * @return the new messages and the cursor for the next call
+     */
+    @GetMapping("/games/{gameId}/chats")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public ChatGetDTO getChatAfter(@PathVariable Long gameId, @RequestParam(defaultValue = "0") long after) {
+        Chat newMessages = chatService.getMessagesAfter(gameId, after);
+        return ChatDTOMapper.INSTANCE.convertEntityToChatGetDTO(newMessages);
+    }
+
+    /** API-call to stream the game chat as server-sent events instead of polling for it
+     * @param gameId = the id of the game
+     * @param after = the cursor of the chat the client already has, 0 to start with the newest messages
+     * @param lastEventId = set by the browser when it reconnects (the cursor of the last event), takes precedence over after
+     * @return a stream of chat events, each one with the new messages and the next cursor
+     */
+    @GetMapping(value = "/games/{gameId}/chats/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter chatStream(@PathVariable Long gameId, @RequestParam(defaultValue = "0") long after,
+                                 @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        if (lastEventId != null && lastEventId.matches("\\d{1,18}")) {
+            after = Long.parseLong(lastEventId);
+        }
+        return chatService.subscribe(gameId, after);
+    }
+
+    /** API-call for the older messages of the game chat, one page at a time going back
+     * @param gameId = the id of the game
+     * @param before = the cursor of the previous page, 0 to start with the newest archived messages
+     * @param size = the number of messages in a page
+     * @return the page of messages and the cursor for the next page
+     */
+    @GetMapping("/games/{gameId}/chats/history")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public ChatGetDTO getChatHistory(@PathVariable Long gameId, @RequestParam(defaultValue = "0") long before,
+                                     @RequestParam(defaultValue = "50") int size) {
+        Chat history = chatService.getHistory(gameId, before, size);
+        return ChatDTOMapper.INSTANCE.convertEntityToChatGetDTO(history);
+    }
+
     @PutMapping("/games/{gameId}/chats")
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
     public boolean addGuess(@PathVariable Long gameId, @RequestBody MessagePostDTO messagePostDTO) {
         Message message = ChatDTOMapper.INSTANCE.convertMessagePostDTOtoEntity(messagePostDTO);
-        message = chatService.createMessage(message);
-        Game game = gameService.getGame(gameId); // find game
-        Round round = roundService.getRound(game.getRoundId()); // get current round
-        boolean guess = false;
-        if (round.getStatus().equals(DRAWING)) { // check if the phase of the round is correct
-            guess = roundService.makeGuess(message,round); // check if the guess is valid and correct
-            if (guess) {
-                gameService.addPoints(game,message);
-                chatService.guessingWordMessage(gameId,message.getWriterName());
-            }
+        int points = gameService.getGuessPoints(gameId);
+        boolean guess = roundService.checkGuess(gameId, message, points); // decided in memory, false while the game is not drawing
+        if (guess) { // saved in the background, the scoreboard too
+            scoreBoardService.queuePoints(gameId, message.getWriterName(), points);
+            chatService.queueBotMessage(gameId, BotMessage.GUESSED_WORD, message.getWriterName()); // written with the next step of the game
         }
-        if (!guess) {
+        else { // only messages that are not the right word are kept
+            message = chatService.createMessage(message);
             chatService.addNewMessage(gameId, message); // add chat message
-
         }
         return guess;
     }
@@ -317,8 +593,11 @@ public class GameController {
     public void removeMember(@PathVariable Long gameId, @RequestBody UserPostDTO userPostDTO) {
         User userInput = DTOMapper.INSTANCE.convertUserPostDTOtoEntity(userPostDTO);
         gameService.leaveGame(gameId, userInput.getUsername());
-        lobbyService.removeLobbyMembers(gameId, userInput.getUsername(), true);
+        boolean deleted = lobbyService.removeLobbyMembers(gameId, userInput.getUsername(), true);
         chatService.leavingGameMessage(gameId,userInput.getUsername());
+        if (deleted) { // nobody is left to listen to the chat
+            chatService.closeChat(gameId);
+        }
     }
 
 
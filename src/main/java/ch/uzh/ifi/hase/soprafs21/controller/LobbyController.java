@@ -13,7 +13,9 @@ import ch.uzh.ifi.hase.soprafs21.service.LobbyService;
 import ch.uzh.ifi.hase.soprafs21.service.GameService;
 import ch.uzh.ifi.hase.soprafs21.service.UserService;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -113,8 +115,11 @@ public class LobbyController {
     @ResponseBody
     public void removeMember(@PathVariable Long lobbyId, @RequestBody UserPostDTO userPostDTO) {
         User userInput = DTOMapper.INSTANCE.convertUserPostDTOtoEntity(userPostDTO);
-        lobbyService.removeLobbyMembers(lobbyId, userInput.getUsername(), false);
+        boolean deleted = lobbyService.removeLobbyMembers(lobbyId, userInput.getUsername(), false);
         chatService.leavingLobbyMessage(lobbyId,userInput.getUsername());
+        if (deleted) { // nobody is left to listen to the chat
+            chatService.closeChat(lobbyId);
+        }
     }
 
     // Back to the lobby
@@ -146,6 +151,33 @@ public class LobbyController {
         return newChat;
     }
 
+    @GetMapping("/lobbies/{lobbyId}/chats")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public ChatGetDTO getChatAfter(@PathVariable Long lobbyId, @RequestParam(defaultValue = "0") long after) {
+        Chat newMessages = chatService.getMessagesAfter(lobbyId, after);
+        return ChatDTOMapper.INSTANCE.convertEntityToChatGetDTO(newMessages);
+    }
+
+    // stream the lobby chat, a reconnecting browser continues after its Last-Event-ID
+    @GetMapping(value = "/lobbies/{lobbyId}/chats/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter chatStream(@PathVariable Long lobbyId, @RequestParam(defaultValue = "0") long after,
+                                 @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        if (lastEventId != null && lastEventId.matches("\\d{1,18}")) {
+            after = Long.parseLong(lastEventId);
+        }
+        return chatService.subscribe(lobbyId, after);
+    }
+
+    @GetMapping("/lobbies/{lobbyId}/chats/history")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public ChatGetDTO getChatHistory(@PathVariable Long lobbyId, @RequestParam(defaultValue = "0") long before,
+                                     @RequestParam(defaultValue = "50") int size) {
+        Chat history = chatService.getHistory(lobbyId, before, size);
+        return ChatDTOMapper.INSTANCE.convertEntityToChatGetDTO(history);
+    }
+
     @PutMapping("/lobbies/{lobbyId}/chats")
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
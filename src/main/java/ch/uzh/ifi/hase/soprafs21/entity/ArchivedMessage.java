@@ -0,0 +1,64 @@
+package ch.uzh.ifi.hase.soprafs21.entity;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * A chat message that dropped out of the window of its chat. It is moved out of MESSAGE, so the chat only loads its
+ * newest messages, and is only read again page by page through the history of the chat.
+ */
+@Entity
+@Table(name = "ARCHIVED_MESSAGE", indexes = @Index(name = "archived_message_chat_sequence", columnList = "chat_id, sequence"))
+public class ArchivedMessage implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    private Long messageId; // the id the message had in MESSAGE
+
+    @Column(name = "chat_id", nullable = false)
+    private Long chatId;
+
+    @Column(nullable = false)
+    private long sequence;
+
+    @Column(nullable = false)
+    private String timeStamp;
+
+    @Column
+    private String writerName;
+
+    @Column(nullable = false)
+    private String message;
+
+    public ArchivedMessage() {}
+
+    // a copy of a message of the window
+    public ArchivedMessage(Message message) {
+        this.messageId = message.getMessageId();
+        this.chatId = message.getChatId();
+        this.sequence = message.getSequence();
+        this.timeStamp = message.getTimeStamp();
+        this.writerName = message.getWriterName();
+        this.message = message.getMessage();
+    }
+
+    // the archived message as a message again, to send it like the others
+    public Message toMessage() {
+        Message value = new Message();
+        value.setMessageId(messageId);
+        value.setChatId(chatId);
+        value.setSequence(sequence);
+        value.setTimeStamp(timeStamp);
+        value.setWriterName(writerName);
+        value.setMessage(message);
+        return value;
+    }
+
+    public Long getMessageId() { return messageId; }
+    public Long getChatId() { return chatId; }
+    public long getSequence() { return sequence; }
+    public String getTimeStamp() { return timeStamp; }
+    public String getWriterName() { return writerName; }
+    public String getMessage() { return message; }
+}
@@ -6,11 +6,11 @@ import javax.persistence.*;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
+import java.time.DateTimeException;
 
 @Entity
 @Table(name = "BRUSHSTROKE")
-public class BrushStroke implements Serializable, Comparable {
+public class BrushStroke implements Serializable, Comparable<BrushStroke> {
 
     private static final long serialVersionUID = 1L;
 
@@ -27,6 +27,15 @@ public class BrushStroke implements Serializable, Comparable {
     @Column(nullable = false)
     private String timeStamp;
 
+    @Column(nullable = false)
+    private long timeKey; // timeStamp in milliseconds since epoch, so strokes can be searched without parsing strings
+
+    @Column(name = "drawing_id")
+    private Long drawingId; // the drawing this stroke belongs to, written together with the stroke so no link table is needed
+
+    @Column(nullable = false)
+    private long sequence; // position of this stroke within its drawing, handed out by the server starting at 1
+
     @Column(nullable = false)
     private int size;
 
@@ -44,7 +53,27 @@ public class BrushStroke implements Serializable, Comparable {
     public void setY(int y) { this.y = y; }
 
     public String getTimeStamp() { return this.timeStamp; }
-    public void setTimeStamp(String timeStamp) { this.timeStamp = timeStamp; }
+    public void setTimeStamp(String timeStamp) {
+        // keep the primitive key in sync, a time stamp we can not read would put the stroke out of order
+        if (timeStamp == null) {
+            throw new IllegalArgumentException("A brush stroke needs a time stamp.");
+        }
+        try {
+            this.timeKey = new Standard().toEpochMilli(timeStamp);
+            this.timeStamp = timeStamp;
+        }
+        catch (DateTimeException e) {
+            throw new IllegalArgumentException(String.format("The time stamp %s of a brush stroke is not valid.", timeStamp));
+        }
+    }
+
+    public long getTimeKey() { return this.timeKey; }
+
+    public Long getDrawingId() { return this.drawingId; }
+    public void setDrawingId(Long drawingId) { this.drawingId = drawingId; }
+
+    public long getSequence() { return this.sequence; }
+    public void setSequence(long sequence) { this.sequence = sequence; }
 
     public int getSize() { return this.size; }
     public void setSize(int size) { this.size = size; }
@@ -64,42 +93,38 @@ public class BrushStroke implements Serializable, Comparable {
         this.colour = c;
 
         // the time it was created
-        LocalDateTime currentTime = LocalDateTime.now(ZoneId.of("UTC"));
-        DateTimeFormatter formatter = new Standard().getDateTimeFormatter();
-        this.timeStamp = currentTime.format(formatter);
+        stampNow();
     }
 
-    // required constructor with no parameters so that it can get parsed by the mapper
-    public BrushStroke() {
-        new BrushStroke(0,0,0,"");
+    // constructor for strokes that already have a time key (e.g. coming out of a live drawing)
+    public BrushStroke(int x, int y, int size, String c, long timeKey) {
+        this.x = x;
+        this.y = y;
+        this.size = size;
+        this.colour = c;
+        this.timeKey = timeKey;
+        this.timeStamp = new Standard().fromEpochMilli(timeKey);
     }
 
-    // needed class in order to sort a list of BrushStroke objects
+    // required constructor with no parameters so that it can get parsed by the mapper, the setters fill in the fields
+    public BrushStroke() {}
+
+    // set the time stamp and its key to the current time
+    private void stampNow() {
+        Standard standard = new Standard();
+        LocalDateTime currentTime = LocalDateTime.now(ZoneId.of("UTC"));
+        this.timeStamp = currentTime.format(standard.getDateTimeFormatter());
+        this.timeKey = standard.toEpochMilli(currentTime);
+    }
+
+    // needed class in order to sort a list of BrushStroke objects, by time and then by the order they were appended in
     @Override
-    public int compareTo(Object o) {
-        // initialize a faulty value
-        int value = 0;
-
-        // check if a proper object has been passed down
-        if(o instanceof BrushStroke) {
-            // preparation
-            BrushStroke other = (BrushStroke) o; // casting the object that was past down to brushStroke in order to access its methods
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss:SSS"); // create a formatter to parse the timeStamp Strings through
-            LocalDateTime thisTime = LocalDateTime.parse(this.getTimeStamp(), formatter); // parse this time to LocalDateTime
-            LocalDateTime otherTime = LocalDateTime.parse(other.getTimeStamp(), formatter); // parse the other objects time to LocalDateTime
-
-            // comparison
-            if(thisTime.isBefore(otherTime)) {
-                value = -1;
-            } else if (thisTime.isEqual(otherTime)) {
-                value = 0;
-            } else {
-                value = 1;
-            }
-        } else {
-            throw new ClassCastException();
+    public int compareTo(BrushStroke other) {
+        // comparison on the primitive keys, nothing gets parsed or allocated
+        int value = Long.compare(this.timeKey, other.timeKey);
+        if (value == 0) {
+            value = Long.compare(this.sequence, other.sequence);
         }
-
         return value;
     }
 
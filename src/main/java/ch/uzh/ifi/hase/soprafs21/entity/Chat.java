@@ -15,13 +15,22 @@ public class Chat implements Serializable{
     @Column (nullable = false)
     private Long chatId;
 
+    @Column(nullable = false)
+    private long lastSequence = 0; // sequence number of the newest message in this chat
+
+    // the messages point to their chat themselves, so a poll can read the tail of the chat from the index on MESSAGE
     @OneToMany
+    @JoinColumn(name = "chat_id", insertable = false, updatable = false)
+    @OrderBy("sequence ASC")
     List<Message> messages = new ArrayList<Message>();
 
     // generic methods to handle incoming requests
     public Long getChatId() { return this.chatId; }
     public void setChatId(Long chatId) { this.chatId = chatId; }
 
+    public long getLastSequence() { return this.lastSequence; }
+    public void setLastSequence(long lastSequence) { this.lastSequence = lastSequence; }
+
     public List<Message> getMessage() { return this.messages; }
     public void setMessage(Message message) { messages.add(message); }
 
@@ -1,6 +1,5 @@
 package ch.uzh.ifi.hase.soprafs21.entity;
 
-import org.hibernate.annotations.Cascade;
 import org.hibernate.annotations.Fetch;
 import org.hibernate.annotations.FetchMode;
 
@@ -23,9 +22,17 @@ public class Drawing implements Serializable {
     @Column(nullable = false)
     private String drawerName = "";
 
-    @ManyToMany(fetch = FetchType.EAGER)
+    @Column(nullable = false)
+    private long lastSequence = 0; // sequence number of the newest brush stroke in this drawing
+
+    @Column(nullable = false)
+    private boolean timeOrdered = true; // the time keys never go down in sequence order, a late batch of a drawer can break that
+
+    // the strokes point to their drawing themselves, so appending a stroke is a single insert into BRUSHSTROKE
+    @OneToMany(fetch = FetchType.EAGER)
     @Fetch(value = FetchMode.SUBSELECT)
-    @Cascade(org.hibernate.annotations.CascadeType.ALL)
+    @JoinColumn(name = "drawing_id", insertable = false, updatable = false)
+    @OrderBy("sequence ASC") // load the strokes in the order they were appended, the order getDrawing searches them in
     private List<BrushStroke> brushStrokes = new ArrayList<>();
 
     // generic methods to handle incoming requests
@@ -35,6 +42,12 @@ public class Drawing implements Serializable {
     public String getDrawerName() { return this.drawerName; }
     public void setDrawerName(String newDrawerName) { this.drawerName = newDrawerName; };
 
+    public long getLastSequence() { return this.lastSequence; }
+    public void setLastSequence(long lastSequence) { this.lastSequence = lastSequence; }
+
+    public boolean isTimeOrdered() { return this.timeOrdered; }
+    public void setTimeOrdered(boolean timeOrdered) { this.timeOrdered = timeOrdered; }
+
     public List<BrushStroke> getBrushStrokes() { return this.brushStrokes; }
     public void setBrushStrokes(List<BrushStroke> brushStrokes) { this.brushStrokes = brushStrokes; };
 
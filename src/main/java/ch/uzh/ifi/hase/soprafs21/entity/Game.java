@@ -1,7 +1,9 @@
 package ch.uzh.ifi.hase.soprafs21.entity;
 
 import ch.uzh.ifi.hase.soprafs21.constant.GameModes;
+import ch.uzh.ifi.hase.soprafs21.constant.GamePhase;
 import ch.uzh.ifi.hase.soprafs21.constant.RoundStatus;
+import ch.uzh.ifi.hase.soprafs21.helper.StateVersion;
 import ch.uzh.ifi.hase.soprafs21.service.GameService;
 import ch.uzh.ifi.hase.soprafs21.service.RoundService;
 
@@ -46,6 +48,21 @@ public class Game implements Serializable {
     @Column(nullable = true, unique = true)
     private Long roundId;
 
+    @Column(nullable = true)
+    private GamePhase phase; // the step the game is at, null until it is started
+
+    @Column(nullable = true)
+    private Long phaseDeadline; // [ms since epoch] when the next step of the game is due
+
+    @Column(nullable = false)
+    private int roundIndex; // index of the round the game is at
+
+    @Column(nullable = false)
+    private int playerIndex; // index of the player whose turn it is
+
+    @Column(nullable = false)
+    private long stateVersion; // goes up whenever the game is saved with changes, the clients get it as ETag
+
     @OneToOne
     private Timer timer;
 
@@ -118,6 +135,23 @@ public class Game implements Serializable {
     public Long getRoundId() { return this.roundId; }
     public void setRoundId(Long roundId) { this.roundId = roundId; }
 
+    // access the progress of the running game, so it can be resumed after a restart
+    public GamePhase getPhase() { return this.phase; }
+    public void setPhase(GamePhase phase) { this.phase = phase; }
+    public Long getPhaseDeadline() { return this.phaseDeadline; }
+    public void setPhaseDeadline(Long phaseDeadline) { this.phaseDeadline = phaseDeadline; }
+    public int getRoundIndex() { return this.roundIndex; }
+    public void setRoundIndex(int roundIndex) { this.roundIndex = roundIndex; }
+    public int getPlayerIndex() { return this.playerIndex; }
+    public void setPlayerIndex(int playerIndex) { this.playerIndex = playerIndex; }
+
+    // access the version of the saved state, set whenever the game is written
+    public long getStateVersion() { return this.stateVersion; }
+
+    @PrePersist
+    @PreUpdate
+    private void nextStateVersion() { this.stateVersion = StateVersion.next(); }
+
     // access to the timer
     public Timer getTimer() { return this.timer; }
     public void setTimer(Timer timer) { this.timer = timer; }
@@ -8,7 +8,7 @@ import java.io.Serializable;
 
 
 @Entity
-@Table(name = "MESSAGE")
+@Table(name = "MESSAGE", indexes = @Index(name = "message_chat_sequence", columnList = "chat_id, sequence"))
 public class Message implements Serializable {
 
     private static final long serialVersionUID = 1L;
@@ -24,6 +24,12 @@ public class Message implements Serializable {
     @Column
     private String writerName;
 
+    @Column(name = "chat_id")
+    private Long chatId; // the chat this message belongs to, written together with the message so no link table is needed
+
+    @Column(nullable = false)
+    private long sequence; // position of this message within its chat, handed out by the server starting at 1
+
     @NotBlank
     @NotEmpty
     @Column(nullable = false)
@@ -39,6 +45,12 @@ public class Message implements Serializable {
         this.writerName = writerName;
     }
 
+    public Long getChatId() { return chatId; }
+    public void setChatId(Long chatId) { this.chatId = chatId; }
+
+    public long getSequence() { return sequence; }
+    public void setSequence(long sequence) { this.sequence = sequence; }
+
     public String getMessage() {
         return message;
     }
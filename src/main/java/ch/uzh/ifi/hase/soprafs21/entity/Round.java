@@ -1,6 +1,7 @@
 package ch.uzh.ifi.hase.soprafs21.entity;
 
 import ch.uzh.ifi.hase.soprafs21.constant.RoundStatus;
+import ch.uzh.ifi.hase.soprafs21.helper.StateVersion;
 
 import javax.persistence.*;
 import java.io.Serializable;
@@ -68,10 +69,25 @@ public class Round implements Serializable {
     @Column(nullable = true)
     private String word;
 
+    @Column(nullable = true)
+    private Long gameId; // the game this round belongs to
+
+    @Column(nullable = false)
+    private long stateVersion; // goes up whenever the round is saved with changes, the clients get it as ETag
+
     // generic getter and setter methods for the mapper
     public Long getId() { return this.id; }
     public void setId(Long id) { this.id = id; }
 
+    public Long getGameId() { return this.gameId; }
+    public void setGameId(Long gameId) { this.gameId = gameId; }
+
+    public long getStateVersion() { return this.stateVersion; }
+
+    @PrePersist
+    @PreUpdate
+    private void nextStateVersion() { this.stateVersion = StateVersion.next(); }
+
     public RoundStatus getStatus() { return this.status; }
     public void setStatus(RoundStatus status) { this.status = status; }
 
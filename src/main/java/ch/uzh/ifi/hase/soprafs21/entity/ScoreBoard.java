@@ -1,5 +1,7 @@
 package ch.uzh.ifi.hase.soprafs21.entity;
 
+import ch.uzh.ifi.hase.soprafs21.helper.StateVersion;
+
 import javax.persistence.*;
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -23,6 +25,9 @@ public class ScoreBoard implements Serializable {
     @Column(nullable = false)
     private int[] score;
 
+    @Column(nullable = false)
+    private long stateVersion; // goes up whenever the scoreboard is saved with changes, the clients get it as ETag
+
     // constructor methods
     public ScoreBoard() {
         ArrayList<String> players = new ArrayList<String>(4);
@@ -49,6 +54,12 @@ public class ScoreBoard implements Serializable {
     public int[] getScore() { return score; }
     public void setScore(int[] score) { this.score = score; }
 
+    public long getStateVersion() { return stateVersion; }
+
+    @PrePersist
+    @PreUpdate
+    private void nextStateVersion() { this.stateVersion = StateVersion.next(); }
+
     // toString method to check if the implementation works
     public String toString() {
         String value = "This is the current Scoreboard:\n";
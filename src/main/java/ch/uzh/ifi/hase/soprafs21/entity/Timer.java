@@ -4,8 +4,6 @@ import ch.uzh.ifi.hase.soprafs21.helper.Standard;
 
 import javax.persistence.*;
 import java.io.Serializable;
-import java.time.LocalTime;
-import java.time.ZoneId;
 
 @Entity
 @Table(name = "TIMER")
@@ -17,7 +15,7 @@ public class Timer implements Serializable {
      * @param timerId = id to find the correct timer in the repository
      * @param drawingTimeSpan = time to draw the picture (gets set by the api caller)
      * @param selectTimeSpan = time to select the word you (gets set by the standards defined in the respective class)
-     * @param start = time at which the timer was started
+     * @param deadline = time at which the running timer is up [ms since epoch], null if it is not running
      */
     @Id
     @GeneratedValue
@@ -36,7 +34,7 @@ public class Timer implements Serializable {
     private boolean isDrawing;
 
     @Column(nullable = true)
-    private LocalTime start;
+    private Long deadline;
 
     /** Constructor for the timer
      * - without parameters, because it is needed for the mapper to work properly
@@ -51,7 +49,7 @@ public class Timer implements Serializable {
         this.drawingTimeSpan = drawingTimeSpan; // drawingTimeSpan;
         this.selectTimeSpan = new Standard().getTimeToSelect();
         this.isDrawing = false;
-        this.start = null;
+        this.deadline = null;
     }
 
     /** Basic getter and setter methods for the Timer */
@@ -75,37 +73,26 @@ public class Timer implements Serializable {
     public boolean getIsDrawing() { return this.isDrawing; }
     public void setIsDrawing(boolean isDrawing) { this.isDrawing = isDrawing; }
 
-    // access when the timer was started
-    public LocalTime getStart() { return this.start; }
-    public void setStart(LocalTime start) { this.start = start; }
+    // access when the running timer is up
+    public Long getDeadline() { return this.deadline; }
+    public void setDeadline(Long deadline) { this.deadline = deadline; }
 
     /** helper methods for debugging */
     // classical toString method for debugging
     public String toString() {
         String mode, totalTime, state;
-        Double time;
         if(isDrawing) {
             mode = "drawing";
             totalTime = "" + drawingTimeSpan;
-            time = (double) getDrawingTimeSpan();
         } else {
             mode = "selecting";
             totalTime = "" + selectTimeSpan;
-            time = (double) getSelectTimeSpan();
         }
-        if(start == null) {
+        if(deadline == null) {
             state = "can be run";
         } else {
-            state = "is running, remaining time: ";
-            LocalTime rightNow = LocalTime.now(ZoneId.of("UTC"));
-            double tempMilli = Math.floor((rightNow.getNano() - getStart().getNano()) / Math.pow(10.0,6.0)) / Math.pow(10.0,3.0);
-            double tempSec = rightNow.getSecond() - start.getSecond();
-            double value = Math.floor((time - (tempSec + tempMilli)) * 1000) / 1000;
-            if(value >= 0){
-                state += "" + value + "[s]";
-            } else {
-                state += "time is up";
-            }
+            // the remaining time depends on the clock of the TimerService, the entity only knows the deadline
+            state = "is running until " + new Standard().fromEpochMilli(deadline);
         }
         return "Timer: { currently " + mode + ", total time: " + totalTime + "[s], " + state + " }";
     }
@@ -0,0 +1,86 @@
+package ch.uzh.ifi.hase.soprafs21.helper;
+
+import ch.uzh.ifi.hase.soprafs21.entity.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * The newest messages of a chat, held in memory in a ring buffer of a fixed size. The message with sequence number n
+ * sits in slot n % capacity, so a new message takes the slot of the oldest one and the memory of a chat stays the same
+ * however long its lobby lives. The messages that drop out are in the archive, only the history endpoint reads them.
+ */
+public class ChatWindow {
+
+    private final Message[] ring;
+    private long lastSequence = 0; // sequence number of the newest message, 0 if the chat is still empty
+    private int count = 0; // number of slots in use
+    private final TreeMap<Long, Message> waiting = new TreeMap<>(); // committed messages whose predecessor is not in yet
+
+    // take over the newest messages that are already saved for this chat
+    public ChatWindow(int capacity, List<Message> messages) {
+        this.ring = new Message[Math.max(1, capacity)];
+        for (Message message : messages) {
+            append(message);
+        }
+    }
+
+    // the sequence number of the newest message, 0 if the chat is still empty
+    public synchronized long getLastSequence() { return lastSequence; }
+
+    /** Add a message at the end, the oldest message drops out once the buffer is full
+     * @param message = a message that already got its sequence number
+     */
+    public synchronized void append(Message message) {
+        long sequence = message.getSequence();
+        if (sequence <= lastSequence) { // already in here
+            return;
+        }
+        ring[slot(sequence)] = message; // slots of missing messages keep an older message, getAfter skips them
+        count = (int) Math.min(ring.length, count + sequence - lastSequence);
+        lastSequence = sequence;
+    }
+
+    /** Add a message once its transaction committed. Two transactions of a chat commit in the order of their
+     * sequence numbers, but their callbacks may run the other way round, so a message that comes before the one
+     * in front of it waits until the gap is filled (or the waiting messages would fill the whole window).
+     * @param message = a committed message with its sequence number
+     * @return the messages that were added, in the order of their sequence numbers, empty if none was
+     */
+    public synchronized List<Message> commit(Message message) {
+        List<Message> value = new ArrayList<>();
+        if (message.getSequence() <= lastSequence) { // already in here, e.g. read from the database in the meantime
+            return value;
+        }
+        waiting.put(message.getSequence(), message);
+        while (!waiting.isEmpty()
+                && (waiting.firstKey() <= lastSequence + 1 || waiting.size() >= ring.length)) {
+            Message next = waiting.pollFirstEntry().getValue();
+            if (next.getSequence() > lastSequence) {
+                append(next);
+                value.add(next);
+            }
+        }
+        return value;
+    }
+
+    /** Get the messages with a sequence number strictly greater than after, a cursor from before the window
+     * gets the whole window
+     * @param after = the last sequence number the client has already received
+     * @return the messages in the order of their sequence numbers
+     */
+    public synchronized List<Message> getAfter(long after) {
+        long from = Math.max(after + 1, lastSequence - count + 1);
+        List<Message> value = new ArrayList<>((int) Math.max(0, lastSequence - from + 1));
+        for (long sequence = from; sequence <= lastSequence; sequence++) {
+            Message message = ring[slot(sequence)];
+            if (message != null && message.getSequence() == sequence) {
+                value.add(message);
+            }
+        }
+        return value;
+    }
+
+    private int slot(long sequence) { return (int) (sequence % ring.length); }
+}
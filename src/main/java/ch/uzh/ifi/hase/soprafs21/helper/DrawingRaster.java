@@ -0,0 +1,90 @@
+package ch.uzh.ifi.hase.soprafs21.helper;
+
+import ch.uzh.ifi.hase.soprafs21.constant.Colours;
+import ch.uzh.ifi.hase.soprafs21.entity.BrushStroke;
+
+import javax.imageio.ImageIO;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Draws the brush strokes of a drawing onto an image, one batch at a time, so a picture of the drawing can be handed
+ * out without replaying all of its strokes. Consecutive points of the same brush that follow each other quickly are
+ * connected to a line, every other point is drawn as a dot.
+ */
+public class DrawingRaster {
+
+    private final Long drawingId;
+    private final BufferedImage image;
+    private final Graphics2D graphics;
+    private final long lineJoinTime;
+
+    private long sequence = 0; // the newest stroke on the image
+    private BrushStroke previous = null; // the last point drawn, a line may continue from it
+    private DrawingSnapshot snapshot = null; // the last encoded picture
+
+    public DrawingRaster(Long drawingId) {
+        Standard standard = new Standard();
+        this.drawingId = drawingId;
+        this.lineJoinTime = standard.getLineJoinTime();
+        this.image = new BufferedImage(standard.getCanvasWidth(), standard.getCanvasHeight(), BufferedImage.TYPE_INT_RGB);
+        this.graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+    }
+
+    public Long getDrawingId() { return this.drawingId; }
+    public synchronized long getSequence() { return this.sequence; }
+
+    // draw the next brush strokes of the drawing, in the order of their sequence numbers
+    public synchronized void draw(List<BrushStroke> brushStrokes) {
+        for (BrushStroke brushStroke : brushStrokes) {
+            int size = Math.max(1, brushStroke.getSize());
+            graphics.setColor(new Color(Colours.toRgb(brushStroke.getColour())));
+            if (continuesLine(brushStroke)) {
+                graphics.setStroke(new BasicStroke(size, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+                graphics.drawLine(previous.getX(), previous.getY(), brushStroke.getX(), brushStroke.getY());
+            } else {
+                graphics.fillOval(brushStroke.getX() - size / 2, brushStroke.getY() - size / 2, size, size);
+            }
+            previous = brushStroke;
+            sequence = Math.max(sequence, brushStroke.getSequence());
+        }
+    }
+
+    /** Get a picture of everything drawn so far, it only gets encoded again if something new was drawn
+     * @return the picture as PNG and the sequence number it covers
+     */
+    public synchronized DrawingSnapshot snapshot() {
+        if (snapshot == null || snapshot.getSequence() != sequence) {
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            try {
+                ImageIO.write(image, "png", png);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            snapshot = new DrawingSnapshot(drawingId, sequence, png.toByteArray());
+        }
+        return snapshot;
+    }
+
+    // free the resources of the image
+    public synchronized void dispose() { graphics.dispose(); }
+
+    private boolean continuesLine(BrushStroke brushStroke) {
+        return previous != null
+                && previous.getSize() == brushStroke.getSize()
+                && Objects.equals(previous.getColour(), brushStroke.getColour())
+                && brushStroke.getTimeKey() - previous.getTimeKey() <= lineJoinTime;
+    }
+}
@@ -0,0 +1,22 @@
+package ch.uzh.ifi.hase.soprafs21.helper;
+
+/**
+ * A rendered picture of a drawing, covering all brush strokes up to (and including) a sequence number.
+ * A client catches up with the picture and asks for the strokes after the sequence.
+ */
+public class DrawingSnapshot {
+
+    private final Long drawingId;
+    private final long sequence;
+    private final byte[] png;
+
+    public DrawingSnapshot(Long drawingId, long sequence, byte[] png) {
+        this.drawingId = drawingId;
+        this.sequence = sequence;
+        this.png = png;
+    }
+
+    public Long getDrawingId() { return this.drawingId; }
+    public long getSequence() { return this.sequence; }
+    public byte[] getPng() { return this.png; }
+}
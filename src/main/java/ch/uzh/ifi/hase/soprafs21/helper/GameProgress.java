@@ -0,0 +1,64 @@
+package ch.uzh.ifi.hase.soprafs21.helper;
+
+import ch.uzh.ifi.hase.soprafs21.constant.GamePhase;
+import ch.uzh.ifi.hase.soprafs21.entity.Game;
+import ch.uzh.ifi.hase.soprafs21.entity.Round;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * How far a running game has come: the phase it is in, the round and the player whose turn it is.
+ * The GameService moves a game forward one step at a time, each step looks at the phase to know what comes next.
+ */
+public class GameProgress {
+
+    private Game game;
+    private Round round;
+    private GamePhase phase = GamePhase.NEW_ROUND;
+    private int roundIndex = 0; // index of the current round
+    private int numberOfRounds;
+    private int playerIndex = 0; // index of the player drawing in this round
+    private int numberOfPlayers;
+    private CompletableFuture<Long> wakeUp; // the signal that wakes up the waiting phase early
+
+    // start a new game, or continue with the progress the game has saved
+    public GameProgress(Game game) {
+        this.game = game;
+        this.numberOfRounds = game.getNumberOfRounds();
+        this.numberOfPlayers = game.getPlayers().size();
+        if (game.getPhase() != null) {
+            this.phase = game.getPhase();
+            this.roundIndex = game.getRoundIndex();
+            this.playerIndex = game.getPlayerIndex();
+        }
+    }
+
+    public Long getGameId() { return this.game.getId(); }
+
+    public Game getGame() { return this.game; }
+    public void setGame(Game game) { this.game = game; }
+
+    public Round getRound() { return this.round; }
+    public void setRound(Round round) { this.round = round; }
+
+    // check if the game waits for its players (to pick a word or to guess it)
+    public boolean isWaiting() { return phase == GamePhase.SELECTING || phase == GamePhase.DRAWING; }
+
+    public CompletableFuture<Long> getWakeUp() { return this.wakeUp; }
+    public void setWakeUp(CompletableFuture<Long> wakeUp) { this.wakeUp = wakeUp; }
+
+    public GamePhase getPhase() { return this.phase; }
+    public void setPhase(GamePhase phase) { this.phase = phase; }
+
+    public int getRoundIndex() { return this.roundIndex; }
+    public void setRoundIndex(int roundIndex) { this.roundIndex = roundIndex; }
+
+    public int getNumberOfRounds() { return this.numberOfRounds; }
+    public void setNumberOfRounds(int numberOfRounds) { this.numberOfRounds = numberOfRounds; }
+
+    public int getPlayerIndex() { return this.playerIndex; }
+    public void setPlayerIndex(int playerIndex) { this.playerIndex = playerIndex; }
+
+    public int getNumberOfPlayers() { return this.numberOfPlayers; }
+    public void setNumberOfPlayers(int numberOfPlayers) { this.numberOfPlayers = numberOfPlayers; }
+}
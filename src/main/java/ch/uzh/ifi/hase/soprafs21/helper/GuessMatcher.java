@@ -0,0 +1,149 @@
+package ch.uzh.ifi.hase.soprafs21.helper;
+
+import java.text.Normalizer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Pattern;
+
+/**
+ * Decides the guesses of one turn in memory. The word is normalized once when the turn starts (case, whitespace and
+ * accents folded), the players are found in a map instead of searching the list, and who has guessed is kept in a
+ * bitset that is updated atomically, so a guess never waits for another one or for the database. The points of the
+ * players are kept next to it, so both are saved together.
+ */
+public class GuessMatcher {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+"); // accents after the letters are split off
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+
+    private final Long roundId;
+    private final String word; // the word as it was chosen, to tell if the round still has the same one
+    private final String answer; // the word normalized
+    private final int drawerIndex;
+    private final int numberOfPlayers;
+    private final Map<String, Integer> playerIndex = new HashMap<>(); // only read after the constructor
+    private final AtomicLongArray guessed; // bit i is set once player i has guessed the word
+    private final AtomicIntegerArray points; // the points player i got for the guess
+    private final AtomicBoolean dirty = new AtomicBoolean(false); // guesses that are not saved yet
+    private boolean closed = false; // the turn is over, guarded by the matcher itself
+
+    /** Prepare the guesses of a turn
+     * @param roundId = the round the turn belongs to
+     * @param word = the word that has to be guessed
+     * @param drawerName = the player who draws and can not guess
+     * @param players = the players of the round, in the order of the round
+     * @param hasGuessed = who has already guessed the word (e.g. before a restart), may be null
+     * @param gotPoints = the points they got for it, may be null
+     */
+    public GuessMatcher(Long roundId, String word, String drawerName, List<String> players, boolean[] hasGuessed, int[] gotPoints) {
+        this.roundId = roundId;
+        this.word = word;
+        this.answer = normalize(word);
+        this.numberOfPlayers = players.size();
+        for (int i = 0; i < players.size(); i++) {
+            playerIndex.putIfAbsent(players.get(i), i);
+        }
+        this.drawerIndex = playerIndex.getOrDefault(drawerName, -1);
+        this.guessed = new AtomicLongArray((players.size() + 63) / 64);
+        this.points = new AtomicIntegerArray(numberOfPlayers);
+        for (int i = 0; hasGuessed != null && i < Math.min(hasGuessed.length, numberOfPlayers); i++) {
+            if (hasGuessed[i]) {
+                setBit(i);
+            }
+        }
+        for (int i = 0; gotPoints != null && i < Math.min(gotPoints.length, numberOfPlayers); i++) {
+            points.set(i, gotPoints[i]);
+        }
+    }
+
+    // fold a text so small differences in writing it do not count: lower case, no accents, single spaces, no spaces around
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String value = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return SPACES.matcher(value.toLowerCase(Locale.ROOT).trim()).replaceAll(" ");
+    }
+
+    public Long getRoundId() { return roundId; }
+
+    // check if the matcher is still for a round and its word
+    public boolean isFor(Long roundId, String word) { return Objects.equals(this.roundId, roundId) && Objects.equals(this.word, word); }
+
+    /** Check a guess and count it if it is the first right one of this player
+     * @param writerName = the player who made the guess
+     * @param guess = the text of the guess
+     * @return the index of the player if the guess counts, -1 otherwise
+     */
+    public int match(String writerName, String guess) {
+        Integer index = playerIndex.get(writerName);
+        if (index == null || index == drawerIndex || !answer.equals(normalize(guess))) {
+            return -1;
+        }
+        return setBit(index) ? index : -1;
+    }
+
+    // check if a player has guessed the word
+    public boolean hasGuessed(int index) { return (guessed.get(index >> 6) & (1L << index)) != 0; }
+
+    // who has guessed, in the order of the players
+    public boolean[] getHasGuessed() {
+        boolean[] value = new boolean[numberOfPlayers];
+        applyTo(value, null);
+        return value;
+    }
+
+    // remember the points a player got for the guess
+    public void setPoints(int index, int value) { points.set(index, value); }
+
+    // the points of the players, in the order of the players
+    public int[] getGotPoints() {
+        int[] value = new int[numberOfPlayers];
+        for (int i = 0; i < numberOfPlayers; i++) {
+            value[i] = points.get(i);
+        }
+        return value;
+    }
+
+    // copy who has guessed and their points into the arrays of a round, nobody is taken out
+    public void applyTo(boolean[] hasGuessed, int[] gotPoints) {
+        for (int i = 0; i < Math.min(hasGuessed.length, numberOfPlayers); i++) {
+            if (hasGuessed(i)) {
+                hasGuessed[i] = true;
+                if (gotPoints != null && i < gotPoints.length) {
+                    gotPoints[i] = points.get(i);
+                }
+            }
+        }
+    }
+
+    // remember that there are guesses to save, false if somebody is already going to save them
+    public boolean markDirty() { return dirty.compareAndSet(false, true); }
+
+    // the guesses up to now are being saved
+    public void clearDirty() { dirty.set(false); }
+
+    // the turn is over, the guesses must not be saved anymore
+    public synchronized void close() { closed = true; }
+    public synchronized boolean isClosed() { return closed; }
+
+    // set the bit of a player, false if it was already set
+    private boolean setBit(int index) {
+        int slot = index >> 6;
+        long bit = 1L << index; // the shift only uses the lowest 6 bits
+        long bits;
+        do {
+            bits = guessed.get(slot);
+            if ((bits & bit) != 0) {
+                return false;
+            }
+        } while (!guessed.compareAndSet(slot, bits, bits | bit));
+        return true;
+    }
+}
@@ -0,0 +1,211 @@
+package ch.uzh.ifi.hase.soprafs21.helper;
+
+import ch.uzh.ifi.hase.soprafs21.entity.BrushStroke;
+import ch.uzh.ifi.hase.soprafs21.entity.Drawing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The drawing that is currently being painted, held in memory while the DRAWING phase lasts.
+ * Every stroke is stored as a row in a couple of primitive arrays (no objects per stroke), the stroke
+ * with sequence number n sits at row n - firstSequence. Rows up to flushed are already in the database,
+ * the rest still has to be written by the write-behind task of the DrawingService.
+ * Serialized answers to delta requests are kept until the next append, all guessers polling with the same
+ * cursor share one byte array.
+ */
+public class LiveDrawing {
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int MAX_CACHED = 64; // serialized answers kept at most, polls in lockstep only need a few
+
+    private final Long gameId;
+    private final Long drawingId;
+    private final long firstSequence; // sequence number of the first row
+    private final double tolerance; // how far (in pixels) new lines may be simplified
+    private final List<String> palette = new ArrayList<>(); // the distinct colours used, the rows only keep an index
+
+    private boolean closed = false; // the DRAWING phase is over, nothing is appended anymore
+    private boolean timeOrdered = true; // the time keys never go down from row to row, a late batch of the drawer can break that
+    private int count = 0; // number of rows in use
+    private int flushed = 0; // number of rows that are already saved
+    private int[] x = new int[INITIAL_CAPACITY];
+    private int[] y = new int[INITIAL_CAPACITY];
+    private int[] size = new int[INITIAL_CAPACITY];
+    private int[] colour = new int[INITIAL_CAPACITY];
+    private long[] timeKey = new long[INITIAL_CAPACITY];
+    private final Map<String, byte[]> cache = new HashMap<>(); // serialized answers by format and cursor
+
+    // take over the strokes that are already saved for this drawing
+    public LiveDrawing(Long gameId, Drawing drawing, double tolerance) {
+        this.gameId = gameId;
+        this.tolerance = tolerance;
+        this.drawingId = drawing.getId();
+        List<BrushStroke> brushStrokes = drawing.getBrushStrokes();
+        this.firstSequence = drawing.getLastSequence() - brushStrokes.size() + 1;
+        for (BrushStroke brushStroke : brushStrokes) {
+            addRow(brushStroke);
+        }
+        this.flushed = count;
+    }
+
+    public Long getGameId() { return this.gameId; }
+    public Long getDrawingId() { return this.drawingId; }
+    public double getTolerance() { return this.tolerance; }
+
+    // the sequence number of the newest stroke, 0 if the drawing is still empty
+    public synchronized long getLastSequence() { return firstSequence + count - 1; }
+
+    // number of strokes that still need to be saved
+    public synchronized int getUnflushedCount() { return count - flushed; }
+
+    // stop taking strokes, a writer that still holds the drawing has to save its strokes elsewhere
+    public synchronized void close() { closed = true; }
+    public synchronized boolean isClosed() { return closed; }
+
+    // check if the time keys are still in the order of the rows, a binary search over them only works while they are
+    public synchronized boolean isTimeOrdered() { return timeOrdered; }
+
+    /** Append a batch of strokes, every stroke gets the next sequence number of this drawing.
+     * The sequence number and drawing id are also set on the given strokes.
+     * @param brushStrokes = the strokes in the order they should be appended
+     * @return the sequence number of the last appended stroke, -1 if the drawing is closed and nothing was appended
+     */
+    public synchronized long append(List<BrushStroke> brushStrokes) {
+        if (closed) {
+            return -1;
+        }
+        for (BrushStroke brushStroke : brushStrokes) {
+            addRow(brushStroke);
+            brushStroke.setSequence(getLastSequence());
+            brushStroke.setDrawingId(drawingId);
+        }
+        if (!brushStrokes.isEmpty()) { // every cached answer misses the new strokes
+            cache.clear();
+        }
+        return getLastSequence();
+    }
+
+    /** Bring a cursor into the range of this drawing, so every cursor that leads to the same answer has the same value
+     * @param after = the last sequence number the client has already received
+     * @return the cursor from which on getStrokesAfter answers
+     */
+    public synchronized long normalizeCursor(long after) {
+        if (after > getLastSequence()) { // the cursor belongs to an earlier drawing
+            after = 0;
+        }
+        return Math.max(after, firstSequence - 1);
+    }
+
+    /** Get a cursor for a point in time, only for clients that still ask by time instead of by sequence number.
+     * Every stroke from the first one that is newer than the time on lies after the cursor, so after a late batch
+     * a stroke may be sent twice but is never skipped.
+     * @param time = epoch milliseconds up to which the client has the strokes
+     * @return the cursor for getStrokesAfter
+     */
+    public synchronized long getSequenceAtTime(long time) { return firstSequence + indexAfterTime(time) - 1; }
+
+    /** Get a serialized answer that was stored for the current state of the drawing
+     * @param format = the kind of answer (e.g. json or binary)
+     * @param cursor = the normalized cursor the answer starts after
+     * @return the serialized answer, null if there is none
+     */
+    public synchronized byte[] getCached(String format, long cursor) { return cache.get(format + ":" + cursor); }
+
+    /** Store a serialized answer, unless strokes were appended since it was built
+     * @param format = the kind of answer (e.g. json or binary)
+     * @param cursor = the normalized cursor the answer starts after
+     * @param lastSequence = the last sequence number of the drawing when the answer was built
+     * @param bytes = the serialized answer
+     */
+    public synchronized void putCached(String format, long cursor, long lastSequence, byte[] bytes) {
+        if (lastSequence != getLastSequence()) { // outdated already
+            return;
+        }
+        if (cache.size() >= MAX_CACHED) {
+            cache.clear();
+        }
+        cache.put(format + ":" + cursor, bytes);
+    }
+
+    /** Get the strokes with a sequence number strictly greater than after (same rules as DrawingService.getStrokesAfter)
+     * @param after = the last sequence number the client has already received
+     * @return newly created brush strokes for the rows after the cursor
+     */
+    public synchronized List<BrushStroke> getStrokesAfter(long after) {
+        if (after > getLastSequence()) { // the cursor belongs to an earlier drawing
+            after = 0;
+        }
+        int from = (int) Math.min(count, Math.max(0, after + 1 - firstSequence));
+        return toBrushStrokes(from, count);
+    }
+
+    // the first row that is newer than the time, with a binary search while the time keys are in order
+    private int indexAfterTime(long time) {
+        int low = 0;
+        int high = count;
+        if (!timeOrdered) { // the times jump back somewhere, look at them one by one
+            while (low < high && timeKey[low] <= time) {
+                low++;
+            }
+            return low;
+        }
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (timeKey[middle] <= time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // hand out all strokes that are not saved yet and count them as saved
+    public synchronized List<BrushStroke> takeUnflushed() {
+        List<BrushStroke> value = toBrushStrokes(flushed, count);
+        flushed = count;
+        return value;
+    }
+
+    // store a single stroke in the next free row
+    private void addRow(BrushStroke brushStroke) {
+        if (count == x.length) { // grow all columns together
+            int capacity = x.length * 2;
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            size = Arrays.copyOf(size, capacity);
+            colour = Arrays.copyOf(colour, capacity);
+            timeKey = Arrays.copyOf(timeKey, capacity);
+        }
+        int index = palette.indexOf(brushStroke.getColour());
+        if (index < 0) {
+            palette.add(brushStroke.getColour());
+            index = palette.size() - 1;
+        }
+        x[count] = brushStroke.getX();
+        y[count] = brushStroke.getY();
+        size[count] = brushStroke.getSize();
+        colour[count] = index;
+        timeKey[count] = brushStroke.getTimeKey();
+        if (count > 0 && timeKey[count] < timeKey[count - 1]) {
+            timeOrdered = false;
+        }
+        count++;
+    }
+
+    // create the brush strokes for the rows from (inclusive) to (exclusive)
+    private List<BrushStroke> toBrushStrokes(int from, int to) {
+        List<BrushStroke> value = new ArrayList<>(Math.max(0, to - from));
+        for (int i = from; i < to; i++) {
+            BrushStroke brushStroke = new BrushStroke(x[i], y[i], size[i], palette.get(colour[i]), timeKey[i]);
+            brushStroke.setSequence(firstSequence + i);
+            brushStroke.setDrawingId(drawingId);
+            value.add(brushStroke);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,107 @@
+package ch.uzh.ifi.hase.soprafs21.helper;
+
+import ch.uzh.ifi.hase.soprafs21.entity.BrushStroke;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Shrinks freehand input before it gets stored. Consecutive brush strokes with the same colour and size form
+ * one polyline, which is simplified with the Ramer-Douglas-Peucker algorithm: the first and last point always
+ * stay, a point in between only stays if the line would move more than the tolerance (in pixels) without it.
+ * A pause longer than the line join time is a lifted pen (the same rule the DrawingRaster and the clients draw by),
+ * so it ends the polyline as well. Both ends of every line are kept, the pause stays in the time stamps.
+ */
+public class PathSimplifier {
+
+    private PathSimplifier() {}
+
+    // simplify a batch with the line join time of the Standard
+    public static List<BrushStroke> simplify(List<BrushStroke> brushStrokes, double tolerance) {
+        return simplify(brushStrokes, tolerance, new Standard().getLineJoinTime());
+    }
+
+    /** Simplify a batch of brush strokes that is already sorted by time
+     * @param brushStrokes = the batch as sent by the drawer
+     * @param tolerance = how far (in pixels) the simplified line may be off, 0 or less keeps every point
+     * @param lineJoinTime = [ms] longest pause within one line, a longer one lifts the pen
+     * @return the brush strokes that are needed to draw the batch (the same objects, in the same order)
+     */
+    public static List<BrushStroke> simplify(List<BrushStroke> brushStrokes, double tolerance, long lineJoinTime) {
+        if (tolerance <= 0 || brushStrokes.size() < 3) {
+            return brushStrokes;
+        }
+
+        boolean[] keep = new boolean[brushStrokes.size()];
+        int start = 0;
+        for (int i = 1; i <= brushStrokes.size(); i++) {
+            // a run ends where the colour or the size changes or the pen was lifted
+            if (i == brushStrokes.size() || !sameBrush(brushStrokes.get(start), brushStrokes.get(i))
+                    || brushStrokes.get(i).getTimeKey() - brushStrokes.get(i - 1).getTimeKey() > lineJoinTime) {
+                markRun(brushStrokes, start, i - 1, tolerance * tolerance, keep);
+                start = i;
+            }
+        }
+
+        List<BrushStroke> value = new ArrayList<>();
+        for (int i = 0; i < keep.length; i++) {
+            if (keep[i]) {
+                value.add(brushStrokes.get(i));
+            }
+        }
+        return value;
+    }
+
+    // Ramer-Douglas-Peucker on the run first..last, without recursion so long lines can not overflow the stack
+    private static void markRun(List<BrushStroke> points, int first, int last, double toleranceSquared, boolean[] keep) {
+        keep[first] = true;
+        keep[last] = true;
+
+        Deque<int[]> segments = new ArrayDeque<>();
+        segments.push(new int[]{first, last});
+        while (!segments.isEmpty()) {
+            int[] segment = segments.pop();
+            int from = segment[0];
+            int to = segment[1];
+
+            // find the point that is farthest away from the line between from and to
+            double maxDistance = -1;
+            int farthest = -1;
+            for (int i = from + 1; i < to; i++) {
+                double distance = distanceSquared(points.get(i), points.get(from), points.get(to));
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    farthest = i;
+                }
+            }
+
+            if (farthest >= 0 && maxDistance > toleranceSquared) {
+                keep[farthest] = true;
+                segments.push(new int[]{from, farthest});
+                segments.push(new int[]{farthest, to});
+            }
+        }
+    }
+
+    // squared distance of point p to the segment a-b
+    private static double distanceSquared(BrushStroke p, BrushStroke a, BrushStroke b) {
+        double dx = b.getX() - a.getX();
+        double dy = b.getY() - a.getY();
+        double lengthSquared = dx * dx + dy * dy;
+        double t = 0;
+        if (lengthSquared > 0) {
+            t = ((p.getX() - a.getX()) * dx + (p.getY() - a.getY()) * dy) / lengthSquared;
+            t = Math.max(0, Math.min(1, t));
+        }
+        double nearestX = a.getX() + t * dx;
+        double nearestY = a.getY() + t * dy;
+        return (p.getX() - nearestX) * (p.getX() - nearestX) + (p.getY() - nearestY) * (p.getY() - nearestY);
+    }
+
+    private static boolean sameBrush(BrushStroke a, BrushStroke b) {
+        return a.getSize() == b.getSize() && Objects.equals(a.getColour(), b.getColour());
+    }
+}
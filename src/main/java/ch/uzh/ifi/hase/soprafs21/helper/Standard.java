@@ -1,5 +1,10 @@
 package ch.uzh.ifi.hase.soprafs21.helper;
 
+import ch.uzh.ifi.hase.soprafs21.constant.GameModes;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.time.LocalTime;
 
@@ -12,8 +17,16 @@ public class Standard {
     public int minNumOfPlayers = 2; // the minimum of users that need to be present for a game
     public int timeToSelect = 10; // [s] time to select the words before a random word is chosen for you
     public int convertToLocalTimeOffSet = 11; // the off set we have if we want to transform the format into localtime
+    public double classicTolerance = 1.0; // [px] how far a simplified line may be off from what was drawn in classic mode
+    public double speedTolerance = 2.0; // [px] the same for speed mode, drawings are rougher anyway
+    public double pokemonTolerance = 0.5; // [px] the same for pokemon mode, the details matter more
+    public int canvasWidth = 800; // [px] width of the canvas the drawer paints on
+    public int canvasHeight = 600; // [px] height of the canvas the drawer paints on
+    public long lineJoinTime = 250; // [ms] points of the same brush that are closer in time than this belong to one line
+
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss:SSS"); // formatters are immutable, so every instance can share one
 
-    public DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss:SSS"); // how time is saved and reasoned about
+    public DateTimeFormatter dateTimeFormatter = DATE_TIME_FORMATTER; // how time is saved and reasoned about
 
     // access number of choices
     public int getNumberOfChoices() { return this.numberOfChoices; }
@@ -31,8 +44,40 @@ public class Standard {
     public int getConvertToLocalTimeOffSet() { return this.convertToLocalTimeOffSet; }
     public void setConvertToLocalTimeOffSet(int convertToLocalTimeOffSet) { this.convertToLocalTimeOffSet = convertToLocalTimeOffSet; }
 
+    // access the tolerance for simplifying lines, 0 keeps every point
+    public double getClassicTolerance() { return this.classicTolerance; }
+    public void setClassicTolerance(double classicTolerance) { this.classicTolerance = classicTolerance; }
+    public double getSpeedTolerance() { return this.speedTolerance; }
+    public void setSpeedTolerance(double speedTolerance) { this.speedTolerance = speedTolerance; }
+    public double getPokemonTolerance() { return this.pokemonTolerance; }
+    public void setPokemonTolerance(double pokemonTolerance) { this.pokemonTolerance = pokemonTolerance; }
+
+    // access the size of the canvas and how points are joined to lines on it
+    public int getCanvasWidth() { return this.canvasWidth; }
+    public void setCanvasWidth(int canvasWidth) { this.canvasWidth = canvasWidth; }
+    public int getCanvasHeight() { return this.canvasHeight; }
+    public void setCanvasHeight(int canvasHeight) { this.canvasHeight = canvasHeight; }
+    public long getLineJoinTime() { return this.lineJoinTime; }
+    public void setLineJoinTime(long lineJoinTime) { this.lineJoinTime = lineJoinTime; }
+
+    // the tolerance for simplifying lines in a certain game mode
+    public double getTolerance(GameModes gameMode) {
+        if (gameMode == GameModes.SPEED) {
+            return getSpeedTolerance();
+        } else if (gameMode == GameModes.POKEMON) {
+            return getPokemonTolerance();
+        } else {
+            return getClassicTolerance();
+        }
+    }
+
     // access the general formatting of time
     public DateTimeFormatter getDateTimeFormatter() { return this.dateTimeFormatter; }
     public void setDateTimeFormatter(DateTimeFormatter dateTimeFormatter) { this.dateTimeFormatter = dateTimeFormatter; }
 
+    // convert a point in time (UTC) to milliseconds since epoch, a primitive key that can be compared without parsing
+    public long toEpochMilli(LocalDateTime time) { return time.toInstant(ZoneOffset.UTC).toEpochMilli(); }
+    public long toEpochMilli(String timeStamp) { return toEpochMilli(LocalDateTime.parse(timeStamp, getDateTimeFormatter())); }
+    public String fromEpochMilli(long epochMilli) { return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMilli), ZoneOffset.UTC).format(getDateTimeFormatter()); }
+
 }
@@ -0,0 +1,21 @@
+package ch.uzh.ifi.hase.soprafs21.helper;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out the versions of the state the clients see (game, round and scoreboard). Every version is higher than all
+ * the ones before, also when an older copy of an entity is saved over a newer one. The versions follow the time
+ * (microseconds since epoch), so they keep going up after a restart of the server.
+ */
+public final class StateVersion {
+
+    private static final AtomicLong LAST = new AtomicLong();
+
+    private StateVersion() {}
+
+    // the next version, at least one higher than the last one
+    public static long next() {
+        long now = System.currentTimeMillis() * 1000;
+        return LAST.updateAndGet(last -> Math.max(last + 1, now));
+    }
+}
@@ -0,0 +1,244 @@
+package ch.uzh.ifi.hase.soprafs21.helper;
+
+import ch.uzh.ifi.hase.soprafs21.constant.Colours;
+import ch.uzh.ifi.hase.soprafs21.entity.BrushStroke;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary encoding of brush strokes for the drawing endpoints (content type application/x-stroke-bin).
+ * All numbers are varints (7 bits per byte, lowest bits first), signed numbers are zig-zag encoded first.
+ *
+ * batch  = count, [ first time in epoch milliseconds, stroke * count ]
+ * stroke = x - previous x, y - previous y, size, colour, time - previous time (all signed)
+ * colour = 1 + ordinal of constant.Colours, or 1 + (number of colours) + index of a name defined earlier in the batch,
+ *          or 0 followed by the byte length and the UTF-8 bytes of a new name (which gets the next index)
+ * delta  = drawing id (0 if unknown), cursor, sequence of the first stroke (0 if there is none), batch
+ */
+public class StrokeCodec {
+
+    public static final String MEDIA_TYPE = "application/x-stroke-bin";
+
+    private static final Colours[] PALETTE = Colours.values();
+    private static final long MAX_TIME = 253402300799999L; // 9999-12-31 23:59:59:999, the last time a time stamp can show
+
+    private StrokeCodec() {}
+
+    /** Encode the answer of a drawing delta request, the strokes need to have consecutive sequence numbers
+     * @param drawingId = the drawing the strokes belong to
+     * @param cursor = the cursor the client has to send with the next request
+     * @param brushStrokes = the strokes after the cursor the client sent
+     * @return the encoded bytes
+     */
+    public static byte[] encodeDelta(Long drawingId, long cursor, List<BrushStroke> brushStrokes) {
+        Output out = new Output(16 + brushStrokes.size() * 6);
+        out.writeVarLong(drawingId == null ? 0 : drawingId);
+        out.writeVarLong(cursor);
+        out.writeVarLong(brushStrokes.isEmpty() ? 0 : brushStrokes.get(0).getSequence());
+        writeBatch(out, brushStrokes);
+        return out.toByteArray();
+    }
+
+    // encode a batch of strokes as sent by the drawer, only the tests play the drawer
+    static byte[] encodeBatch(List<BrushStroke> brushStrokes) {
+        Output out = new Output(8 + brushStrokes.size() * 6);
+        writeBatch(out, brushStrokes);
+        return out.toByteArray();
+    }
+
+    /** Decode a batch of strokes as sent by the drawer
+     * @param bytes = the request body
+     * @return the decoded strokes, with their time stamps set
+     * @throws IllegalArgumentException if the bytes are not a valid batch
+     */
+    public static ArrayList<BrushStroke> decodeBatch(byte[] bytes) {
+        Input in = new Input(bytes);
+        ArrayList<BrushStroke> value = readBatch(in, 0);
+        if (in.remaining() != 0) {
+            throw new IllegalArgumentException("Unexpected bytes after the brush strokes.");
+        }
+        return value;
+    }
+
+    // decode the answer of a drawing delta request (the client's side, for the tests), the first three numbers are only used to number the strokes
+    static List<BrushStroke> decodeDelta(byte[] bytes) {
+        Input in = new Input(bytes);
+        Long drawingId = in.readVarLong();
+        in.readVarLong(); // cursor
+        long firstSequence = in.readVarLong();
+        List<BrushStroke> value = readBatch(in, firstSequence);
+        for (BrushStroke brushStroke : value) {
+            brushStroke.setDrawingId(drawingId == 0 ? null : drawingId);
+        }
+        return value;
+    }
+
+    private static void writeBatch(Output out, List<BrushStroke> brushStrokes) {
+        out.writeVarLong(brushStrokes.size());
+        if (brushStrokes.isEmpty()) {
+            return;
+        }
+
+        List<String> names = new ArrayList<>(); // colour names that are not part of the palette
+        int previousX = 0;
+        int previousY = 0;
+        long previousTime = brushStrokes.get(0).getTimeKey();
+        out.writeVarLong(previousTime);
+
+        for (BrushStroke brushStroke : brushStrokes) {
+            out.writeVarLong(zigZag(brushStroke.getX() - previousX));
+            out.writeVarLong(zigZag(brushStroke.getY() - previousY));
+            out.writeVarLong(zigZag(brushStroke.getSize()));
+            writeColour(out, brushStroke.getColour(), names);
+            out.writeVarLong(zigZag(brushStroke.getTimeKey() - previousTime));
+            previousX = brushStroke.getX();
+            previousY = brushStroke.getY();
+            previousTime = brushStroke.getTimeKey();
+        }
+    }
+
+    private static ArrayList<BrushStroke> readBatch(Input in, long firstSequence) {
+        long count = in.readVarLong();
+        if (count > in.remaining() / 5) { // every stroke needs at least five bytes, do not trust the count blindly
+            throw new IllegalArgumentException("The number of brush strokes does not match the content.");
+        }
+        ArrayList<BrushStroke> value = new ArrayList<>((int) count);
+        if (count == 0) {
+            return value;
+        }
+
+        List<String> names = new ArrayList<>();
+        int x = 0;
+        int y = 0;
+        long time = checkTime(in.readVarLong());
+        for (int i = 0; i < count; i++) {
+            x += (int) unZigZag(in.readVarLong());
+            y += (int) unZigZag(in.readVarLong());
+            int size = (int) unZigZag(in.readVarLong());
+            String colour = readColour(in, names);
+            time = checkTime(time + unZigZag(in.readVarLong()));
+
+            BrushStroke brushStroke = new BrushStroke(x, y, size, colour, time);
+            if (firstSequence > 0) {
+                brushStroke.setSequence(firstSequence + i);
+            }
+            value.add(brushStroke);
+        }
+        return value;
+    }
+
+    // a time the brush stroke can turn into a time stamp, anything else is a broken request and not a server error
+    private static long checkTime(long time) {
+        if (time < 0 || time > MAX_TIME) {
+            throw new IllegalArgumentException("The time of a brush stroke is out of range.");
+        }
+        return time;
+    }
+
+    private static void writeColour(Output out, String colour, List<String> names) {
+        for (int i = 0; i < PALETTE.length; i++) {
+            if (PALETTE[i].name().equals(colour)) {
+                out.writeVarLong(1 + i);
+                return;
+            }
+        }
+        int index = names.indexOf(colour);
+        if (index >= 0) {
+            out.writeVarLong(1 + PALETTE.length + index);
+            return;
+        }
+        // a new name, spelled out once per batch
+        byte[] bytes = (colour == null ? "" : colour).getBytes(StandardCharsets.UTF_8);
+        out.writeVarLong(0);
+        out.writeVarLong(bytes.length);
+        out.writeBytes(bytes);
+        names.add(colour);
+    }
+
+    private static String readColour(Input in, List<String> names) {
+        long code = in.readVarLong();
+        if (code == 0) {
+            String name = new String(in.readBytes((int) in.readVarLong()), StandardCharsets.UTF_8);
+            names.add(name);
+            return name;
+        }
+        if (code <= PALETTE.length) {
+            return PALETTE[(int) code - 1].name();
+        }
+        long index = code - 1 - PALETTE.length;
+        if (index >= names.size()) {
+            throw new IllegalArgumentException("Unknown colour " + code + ".");
+        }
+        return names.get((int) index);
+    }
+
+    private static long zigZag(long value) { return (value << 1) ^ (value >> 63); }
+    private static long unZigZag(long value) { return (value >>> 1) ^ -(value & 1); }
+
+    // growable byte buffer without the synchronisation of ByteArrayOutputStream
+    private static class Output {
+        private byte[] buffer;
+        private int position = 0;
+
+        Output(int capacity) { this.buffer = new byte[Math.max(16, capacity)]; }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeBytes(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        byte[] toByteArray() { return Arrays.copyOf(buffer, position); }
+
+        private void ensure(int needed) {
+            if (position + needed > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + needed));
+            }
+        }
+    }
+
+    private static class Input {
+        private final byte[] buffer;
+        private int position = 0;
+
+        Input(byte[] buffer) { this.buffer = buffer == null ? new byte[0] : buffer; }
+
+        int remaining() { return buffer.length - position; }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= buffer.length) {
+                    throw new IllegalArgumentException("The brush strokes end unexpectedly.");
+                }
+                byte b = buffer[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("A number in the brush strokes is too long.");
+        }
+
+        byte[] readBytes(int length) {
+            if (length < 0 || length > remaining()) {
+                throw new IllegalArgumentException("The brush strokes end unexpectedly.");
+            }
+            byte[] value = Arrays.copyOfRange(buffer, position, position + length);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package ch.uzh.ifi.hase.soprafs21.helper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * A hashed timing wheel for the deadlines of many games. The time is cut into ticks, every tick has a bucket
+ * (wheel size buckets, used round and round) with the timeouts that are due in it. Adding or cancelling a timeout
+ * links it in or out of its bucket, a tick only looks at its own bucket, so neither depends on how many games
+ * are waiting. A wheel that covers the longest phase keeps the buckets down to the timeouts that are really due.
+ * The tasks that are due are handed to an executor, the ticking thread never runs game code itself.
+ */
+public class TimingWheel {
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private final long tickMillis; // [ms] length of a tick
+    private final int mask; // wheel size - 1, the size is a power of two
+    private final Timeout[] buckets; // head of the list of timeouts per bucket
+    private final Executor executor;
+    private final LongSupplier nanoClock; // monotonic time [ns]
+    private final long startNanos; // the time of tick 0
+
+    private long currentTick = 0; // the last tick that was processed
+    private int size = 0; // number of timeouts in the buckets
+    private Thread ticker;
+
+    /** A task that is due at a certain tick, it runs at most once */
+    public final class Timeout {
+
+        private final Runnable task;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private long deadlineTick;
+        private Timeout previous;
+        private Timeout next;
+        private boolean linked;
+
+        private Timeout(Runnable task) { this.task = task; }
+
+        // make sure the task does not run, false if it is already running or done
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+            unlink(this);
+            return true;
+        }
+
+        // check if the task ran or was cancelled
+        public boolean isDone() { return state.get() != PENDING; }
+
+        // run the task unless it got cancelled in the mean time
+        private void expire() {
+            if (state.compareAndSet(PENDING, EXPIRED)) {
+                task.run();
+            }
+        }
+    }
+
+    /** Create a wheel, it only starts ticking on its own after start()
+     * @param tickMillis = [ms] length of a tick, a timeout fires at most this much too late
+     * @param wheelSize = number of buckets, rounded up to a power of two
+     * @param executor = runs the tasks that are due
+     */
+    public TimingWheel(long tickMillis, int wheelSize, Executor executor) {
+        this(tickMillis, wheelSize, executor, System::nanoTime);
+    }
+
+    // create a wheel on a clock of its own, so benchmarks and tests can let the time pass without waiting
+    public TimingWheel(long tickMillis, int wheelSize, Executor executor, LongSupplier nanoClock) {
+        int buckets = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.tickMillis = tickMillis;
+        this.mask = buckets - 1;
+        this.buckets = new Timeout[buckets];
+        this.executor = executor;
+        this.nanoClock = nanoClock;
+        this.startNanos = nanoClock.getAsLong();
+    }
+
+    /** Run a task after a delay. A task without delay is handed to the executor right away.
+     * @param task = what needs to be done
+     * @param delay = [ms] time to wait before the task runs
+     * @return the timeout, to cancel the task
+     */
+    public Timeout schedule(Runnable task, long delay) {
+        Timeout timeout = new Timeout(task);
+        if (delay <= 0) {
+            executor.execute(timeout::expire);
+            return timeout;
+        }
+        long tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        long deadline = nanoClock.getAsLong() - startNanos + TimeUnit.MILLISECONDS.toNanos(delay);
+        long deadlineTick = (deadline + tickNanos - 1) / tickNanos; // rounded up, never fires early
+        synchronized (this) {
+            timeout.deadlineTick = Math.max(deadlineTick, currentTick + 1);
+            link(timeout);
+        }
+        return timeout;
+    }
+
+    // number of timeouts that are waiting
+    public synchronized int size() { return size; }
+
+    /** Process all ticks up to a point in time and hand the tasks that are due to the executor
+     * @param elapsed = [ms] time since the wheel was created
+     * @return number of tasks that were due
+     */
+    public int advance(long elapsed) {
+        List<Timeout> due = new ArrayList<>();
+        synchronized (this) {
+            long targetTick = elapsed / tickMillis;
+            while (currentTick < targetTick) {
+                currentTick++;
+                Timeout timeout = buckets[(int) (currentTick & mask)];
+                while (timeout != null) {
+                    Timeout next = timeout.next;
+                    if (timeout.deadlineTick <= currentTick) { // the others in the bucket are due in a later turn of the wheel
+                        unlinkLocked(timeout);
+                        due.add(timeout);
+                    }
+                    timeout = next;
+                }
+            }
+        }
+        for (Timeout timeout : due) {
+            executor.execute(timeout::expire);
+        }
+        return due.size();
+    }
+
+    // [ms] time since the wheel was created, measured with the monotonic clock
+    public long elapsedMillis() { return TimeUnit.NANOSECONDS.toMillis(nanoClock.getAsLong() - startNanos); }
+
+    // let a thread of its own move the wheel forward once per tick
+    public synchronized void start() {
+        if (ticker != null) {
+            return;
+        }
+        ticker = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                long nextTick = (elapsedMillis() / tickMillis + 1) * tickMillis;
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(nextTick - elapsedMillis()));
+                advance(elapsedMillis());
+            }
+        }, "timing-wheel");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    // stop the thread of the wheel, waiting tasks do not run anymore
+    public synchronized void stop() {
+        if (ticker != null) {
+            ticker.interrupt();
+            ticker = null;
+        }
+    }
+
+    private void link(Timeout timeout) {
+        int index = (int) (timeout.deadlineTick & mask);
+        timeout.next = buckets[index];
+        if (timeout.next != null) {
+            timeout.next.previous = timeout;
+        }
+        buckets[index] = timeout;
+        timeout.linked = true;
+        size++;
+    }
+
+    private synchronized void unlink(Timeout timeout) { unlinkLocked(timeout); }
+
+    private void unlinkLocked(Timeout timeout) {
+        if (!timeout.linked) {
+            return;
+        }
+        int index = (int) (timeout.deadlineTick & mask);
+        if (timeout.previous != null) {
+            timeout.previous.next = timeout.next;
+        } else {
+            buckets[index] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+        timeout.previous = null;
+        timeout.next = null;
+        timeout.linked = false;
+        size--;
+    }
+}
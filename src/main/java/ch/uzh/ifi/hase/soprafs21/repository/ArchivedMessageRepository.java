@@ -0,0 +1,18 @@
+package ch.uzh.ifi.hase.soprafs21.repository;
+
+import ch.uzh.ifi.hase.soprafs21.entity.ArchivedMessage;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository("archivedMessageRepository")
+public interface ArchivedMessageRepository extends JpaRepository<ArchivedMessage, Long> {
+
+    // a page of the archived messages of a chat before a sequence number, the newest first
+    @Query("select m from ArchivedMessage m where m.chatId = :chatId and m.sequence < :before order by m.sequence desc")
+    List<ArchivedMessage> findBefore(@Param("chatId") Long chatId, @Param("before") long before, Pageable pageable);
+}
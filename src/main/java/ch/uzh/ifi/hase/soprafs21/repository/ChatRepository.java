@@ -2,8 +2,12 @@ package ch.uzh.ifi.hase.soprafs21.repository;
 
 import ch.uzh.ifi.hase.soprafs21.entity.Chat;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.LockModeType;
 import java.util.Optional;
 
 // I deleted some unnecessary find functions...
@@ -11,4 +15,9 @@ import java.util.Optional;
 public interface ChatRepository extends JpaRepository<Chat, Long> {
     @Override
     Optional<Chat> findById(Long id);
-}
\ No newline at end of file
+
+    // the chat with its row locked until the end of the transaction, so messages get their sequence in commit order
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select c from Chat c where c.chatId = :chatId")
+    Optional<Chat> findForUpdate(@Param("chatId") Long chatId);
+}
@@ -2,9 +2,21 @@ package ch.uzh.ifi.hase.soprafs21.repository;
 
 import ch.uzh.ifi.hase.soprafs21.entity.Drawing;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository("drawingRepository")
 public interface DrawingRepository extends JpaRepository<Drawing, Long>{
 
+    // move the last sequence forward without loading the drawing and its strokes
+    @Modifying
+    @Query("update Drawing d set d.lastSequence = :lastSequence where d.id = :id and d.lastSequence < :lastSequence")
+    int updateLastSequence(@Param("id") Long id, @Param("lastSequence") long lastSequence);
+
+    // remember that the time keys of the strokes of a drawing are not in the order of their sequence numbers anymore
+    @Modifying
+    @Query("update Drawing d set d.timeOrdered = false where d.id = :id")
+    int markTimeUnordered(@Param("id") Long id);
 }
@@ -1,12 +1,33 @@
 package ch.uzh.ifi.hase.soprafs21.repository;
 
+import ch.uzh.ifi.hase.soprafs21.constant.GamePhase;
 import ch.uzh.ifi.hase.soprafs21.entity.Game;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository("gameRepository")
 public interface GameRepository extends JpaRepository<Game, Long> {
     Optional<Game> findById(Long id);
+
+    // the version of a game without loading it, null if there is no such game
+    @Query("select g.stateVersion from Game g where g.id = :id")
+    Long findStateVersion(@Param("id") Long id);
+
+    // the games that were started and are not over yet
+    @Query("select g from Game g where g.phase is not null and g.phase <> :done and g.testphase = false")
+    List<Game> findRunning(@Param("done") GamePhase done);
+
+    // store how far a game has come without loading it (the players may change in the mean time)
+    @Transactional
+    @Modifying
+    @Query("update Game g set g.phase = :phase, g.phaseDeadline = :phaseDeadline, g.roundIndex = :roundIndex, g.playerIndex = :playerIndex where g.id = :id")
+    int updateProgress(@Param("id") Long id, @Param("phase") GamePhase phase, @Param("phaseDeadline") Long phaseDeadline,
+                       @Param("roundIndex") int roundIndex, @Param("playerIndex") int playerIndex);
 }
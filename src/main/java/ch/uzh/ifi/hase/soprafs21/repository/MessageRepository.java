@@ -3,11 +3,21 @@ package ch.uzh.ifi.hase.soprafs21.repository;
 import ch.uzh.ifi.hase.soprafs21.entity.Chat;
 import ch.uzh.ifi.hase.soprafs21.entity.Message;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository("messageRepository")
 public interface MessageRepository extends JpaRepository<Message, Long> {
 
+    // the messages of a chat after a sequence number, read from the index on (chat_id, sequence)
+    @Query("select m from Message m where m.chatId = :chatId and m.sequence > :after order by m.sequence")
+    List<Message> findAfter(@Param("chatId") Long chatId, @Param("after") long after);
+
+    // the messages of a chat up to a sequence number, the ones that dropped out of the window
+    @Query("select m from Message m where m.chatId = :chatId and m.sequence <= :upTo")
+    List<Message> findUpTo(@Param("chatId") Long chatId, @Param("upTo") long upTo);
 }
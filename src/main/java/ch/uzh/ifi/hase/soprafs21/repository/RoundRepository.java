@@ -2,11 +2,25 @@ package ch.uzh.ifi.hase.soprafs21.repository;
 
 import ch.uzh.ifi.hase.soprafs21.entity.Round;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 
 @Repository("roundRepository")
 public interface RoundRepository extends JpaRepository<Round, Long> {
     Optional<Round> findById(Long id);
+
+    // the version of the current round of a game without loading it, null if there is none
+    @Query("select r.stateVersion from Round r, Game g where g.id = :gameId and r.id = g.roundId")
+    Long findStateVersionByGameId(@Param("gameId") Long gameId);
+
+    // store who has guessed the word and their points without loading the round, the update skips @PreUpdate so the version is passed along
+    @Transactional
+    @Modifying
+    @Query("update Round r set r.hasGuessed = :hasGuessed, r.gotPoints = :gotPoints, r.stateVersion = :stateVersion where r.id = :id")
+    int updateGuesses(@Param("id") Long id, @Param("hasGuessed") boolean[] hasGuessed, @Param("gotPoints") int[] gotPoints, @Param("stateVersion") long stateVersion);
 }
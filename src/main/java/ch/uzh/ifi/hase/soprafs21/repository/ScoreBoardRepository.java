@@ -2,6 +2,8 @@ package ch.uzh.ifi.hase.soprafs21.repository;
 
 import ch.uzh.ifi.hase.soprafs21.entity.ScoreBoard;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
@@ -9,4 +11,12 @@ import java.util.Optional;
 @Repository("scoreBoardRepository")
 public interface ScoreBoardRepository extends JpaRepository<ScoreBoard, Long> {
     Optional<ScoreBoard> findById(Long id);
+
+    // the scoreboard of a game
+    @Query("select s from Game g join g.scoreBoard s where g.id = :gameId")
+    Optional<ScoreBoard> findByGameId(@Param("gameId") Long gameId);
+
+    // the version of the scoreboard of a game without loading it, null if there is none
+    @Query("select s.stateVersion from Game g join g.scoreBoard s where g.id = :gameId")
+    Long findStateVersionByGameId(@Param("gameId") Long gameId);
 }
@@ -11,6 +11,8 @@ public class ChatGetDTO {
 
     private Long chatId;
 
+    private long cursor; // sequence number of the newest message (of the oldest one for a page of the history), to ask for the next messages
+
     List<MessageGetDTO> messages = new ArrayList<>();
 
     public Long getLobbyId() {
@@ -21,6 +23,9 @@ public class ChatGetDTO {
         this.chatId = chatId;
     }
 
+    public long getCursor() { return cursor; }
+    public void setCursor(long cursor) { this.cursor = cursor; }
+
     public List<MessageGetDTO> getMessages() {
         return messages;
     }
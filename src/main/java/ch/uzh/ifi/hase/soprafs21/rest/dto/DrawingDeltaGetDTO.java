@@ -0,0 +1,23 @@
+package ch.uzh.ifi.hase.soprafs21.rest.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class DrawingDeltaGetDTO {
+
+    private Long drawingId;
+    private long cursor;
+    private List<DrawingGetDTO> brushStrokes = new ArrayList<>();
+
+    // methods for drawingId
+    public Long getDrawingId() { return this.drawingId; }
+    public void setDrawingId(Long drawingId) { this.drawingId = drawingId; }
+
+    // methods for cursor, the sequence number to send as after with the next request
+    public long getCursor() { return this.cursor; }
+    public void setCursor(long cursor) { this.cursor = cursor; }
+
+    // methods for brushStrokes
+    public List<DrawingGetDTO> getBrushStrokes() { return this.brushStrokes; }
+    public void setBrushStrokes(List<DrawingGetDTO> brushStrokes) { this.brushStrokes = brushStrokes; }
+}
@@ -7,6 +7,7 @@ public class DrawingGetDTO {
     private String timeStamp;
     private int size;
     private String colour;
+    private long sequence;
 
     // methods for x
     public int getX() { return this.x; }
@@ -27,4 +28,8 @@ public class DrawingGetDTO {
     // methods for colour
     public String getColour() { return this.colour; }
     public void setColour(String colour) { this.colour = colour; }
+
+    // methods for sequence
+    public long getSequence() { return this.sequence; }
+    public void setSequence(long sequence) { this.sequence = sequence; }
 }
@@ -0,0 +1,39 @@
+package ch.uzh.ifi.hase.soprafs21.rest.dto;
+
+/**
+ * Everything a client in a running game needs at once: the round, the scoreboard, the length of the word,
+ * the new strokes of the drawing and the new chat messages.
+ */
+public class GameStateGetDTO {
+
+    private long stateVersion;
+    private RoundGetDTO round;
+    private ScoreBoardGetDTO scoreBoard;
+    private int wordLength;
+    private DrawingDeltaGetDTO drawing;
+    private ChatGetDTO chat;
+
+    // methods for stateVersion, the version to long poll the update with
+    public long getStateVersion() { return this.stateVersion; }
+    public void setStateVersion(long stateVersion) { this.stateVersion = stateVersion; }
+
+    // methods for round
+    public RoundGetDTO getRound() { return this.round; }
+    public void setRound(RoundGetDTO round) { this.round = round; }
+
+    // methods for scoreBoard
+    public ScoreBoardGetDTO getScoreBoard() { return this.scoreBoard; }
+    public void setScoreBoard(ScoreBoardGetDTO scoreBoard) { this.scoreBoard = scoreBoard; }
+
+    // methods for wordLength, 0 as long as no word is picked
+    public int getWordLength() { return this.wordLength; }
+    public void setWordLength(int wordLength) { this.wordLength = wordLength; }
+
+    // methods for drawing, the strokes after the cursor of the request
+    public DrawingDeltaGetDTO getDrawing() { return this.drawing; }
+    public void setDrawing(DrawingDeltaGetDTO drawing) { this.drawing = drawing; }
+
+    // methods for chat, the messages after the time stamp of the request
+    public ChatGetDTO getChat() { return this.chat; }
+    public void setChat(ChatGetDTO chat) { this.chat = chat; }
+}
@@ -3,6 +3,7 @@ package ch.uzh.ifi.hase.soprafs21.rest.dto;
 public class MessageGetDTO {
 
     private Long messageId;
+    private long sequence;
     private String timeStamp;
     private String writerName;
     private String message;
@@ -10,6 +11,9 @@ public class MessageGetDTO {
     public Long getMessageId() { return messageId; }
     public void setMessageId(Long messageId) { this.messageId = messageId; }
 
+    public long getSequence() { return sequence; }
+    public void setSequence(long sequence) { this.sequence = sequence; }
+
     public String getTimeStamp() { return timeStamp; }
     public void setTimeStamp(String timeStamp) { this.timeStamp = timeStamp; }
 
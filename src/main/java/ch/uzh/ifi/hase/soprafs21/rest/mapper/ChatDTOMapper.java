@@ -22,9 +22,11 @@ public interface ChatDTOMapper {
 
     @Mapping(source = "message", target = "messages")
     @Mapping(source = "chatId", target = "lobbyId")
+    @Mapping(source = "lastSequence", target = "cursor")
     ChatGetDTO convertEntityToChatGetDTO(Chat chat);
 
     @Mapping(source = "messageId", target = "messageId")
+    @Mapping(source = "sequence", target = "sequence")
     @Mapping(source = "writerName", target = "writerName")
     @Mapping(source = "message", target = "message")
     @Mapping(source = "timeStamp", target = "timeStamp")
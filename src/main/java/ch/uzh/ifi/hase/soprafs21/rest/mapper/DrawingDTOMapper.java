@@ -16,5 +16,6 @@ public interface DrawingDTOMapper {
     @Mapping(source = "timeStamp", target = "timeStamp")
     @Mapping(source = "size", target = "size")
     @Mapping(source = "colour", target = "colour")
+    @Mapping(source = "sequence", target = "sequence")
     DrawingGetDTO convertEntityToDrawingGetDTO(BrushStroke brushStroke);
 }
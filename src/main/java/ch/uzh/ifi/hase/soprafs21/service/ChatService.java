@@ -1,25 +1,37 @@
 package ch.uzh.ifi.hase.soprafs21.service;
 
+import ch.uzh.ifi.hase.soprafs21.constant.BotMessage;
 import ch.uzh.ifi.hase.soprafs21.entity.*;
+import ch.uzh.ifi.hase.soprafs21.helper.ChatWindow;
 import ch.uzh.ifi.hase.soprafs21.helper.Standard;
+import ch.uzh.ifi.hase.soprafs21.repository.ArchivedMessageRepository;
 import ch.uzh.ifi.hase.soprafs21.repository.ChatRepository;
 import ch.uzh.ifi.hase.soprafs21.repository.MessageRepository;
+import ch.uzh.ifi.hase.soprafs21.rest.dto.ChatGetDTO;
+import ch.uzh.ifi.hase.soprafs21.rest.mapper.ChatDTOMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.LocalDateTime;
-import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.TemporalUnit;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 @Service
@@ -30,11 +42,24 @@ public class ChatService {
 
     private final ChatRepository chatRepository;
     private final MessageRepository messageRepository;
+    private final ArchivedMessageRepository archivedMessageRepository;
+    private final PushService pushService;
+    private final Map<Long, ChatWindow> windows = new ConcurrentHashMap<>(); // the newest messages per chat id
+    private final Map<Long, List<Message>> pendingBotMessages = new ConcurrentHashMap<>(); // bot messages not written yet per chat id
+
+    @Value("${chat.window:100}")
+    private int chatWindow; // newest messages per chat kept in memory and in MESSAGE, older ones are archived
+
+    @Value("${chat.history.page:50}")
+    private int chatHistoryPage; // most archived messages sent in one page of the chat history
 
     @Autowired
-    public ChatService(@Qualifier("chatRepository") ChatRepository chatRepository, MessageRepository messageRepository) {
+    public ChatService(@Qualifier("chatRepository") ChatRepository chatRepository, MessageRepository messageRepository,
+                       ArchivedMessageRepository archivedMessageRepository, PushService pushService) {
         this.chatRepository = chatRepository;
         this.messageRepository = messageRepository;
+        this.archivedMessageRepository = archivedMessageRepository;
+        this.pushService = pushService;
     }
 
     public Chat getChat(Long chatId) {
@@ -61,125 +86,286 @@ public class ChatService {
     }
 
     public void addNewMessage(Long chatId, Message newMessage) {
-        Chat chat = getChat(chatId);
-        chat.setMessage(newMessage);
+        Chat chat = lockChat(chatId);
+        append(chat, newMessage);
+        messageRepository.save(newMessage); // saved with its chat and sequence number in this transaction
         chatRepository.save(chat);
         chatRepository.flush();
     }
 
+    // the chat with its row locked, two messages of the same chat never get the same sequence number
+    private Chat lockChat(Long chatId) {
+        Optional<Chat> optionalChat = chatRepository.findForUpdate(chatId);
+        if (optionalChat.isEmpty()) {
+            String nonExistingChat = "The chat you have been looking for does not exist.";
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, nonExistingChat);
+        }
+        return optionalChat.get();
+    }
+
+    // give the message the next sequence number of the chat and add it at the end
+    private void append(Chat chat, Message message) {
+        long sequence = chat.getLastSequence() + 1;
+        archive(chat, sequence - chatWindow); // before the chat changes, the query would flush it
+        message.setChatId(chat.getChatId());
+        message.setSequence(sequence);
+        chat.setLastSequence(sequence);
+        chat.setMessage(message);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) { // a rolled back message is never shown
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() { show(message); }
+            });
+        }
+        else {
+            show(message);
+        }
+    }
+
+    // put a saved message into the window of its chat and send it to the subscribers
+    private void show(Message message) {
+        ChatWindow window = windows.get(message.getChatId());
+        if (window != null) {
+            synchronized (window) { // a new subscriber gets the message either in its greeting or as an event
+                List<Message> added = window.commit(message);
+                if (!added.isEmpty()) {
+                    publishMessages(message.getChatId(), window.getLastSequence(), added);
+                }
+            }
+        }
+    }
+
+    // move the messages up to a sequence number from the chat into the archive
+    private void archive(Chat chat, long upTo) {
+        if (upTo <= 0) {
+            return;
+        }
+        List<Message> dropped = messageRepository.findUpTo(chat.getChatId(), upTo);
+        if (dropped.isEmpty()) {
+            return;
+        }
+        List<ArchivedMessage> archived = new ArrayList<>();
+        for (Message message : dropped) {
+            archived.add(new ArchivedMessage(message));
+        }
+        archivedMessageRepository.saveAll(archived);
+        messageRepository.deleteAll(dropped);
+        chat.getMessage().removeAll(dropped);
+    }
+
+    // the window of a chat, the first read fills it from the newest saved messages
+    private ChatWindow getWindow(Long chatId) {
+        ChatWindow window = windows.get(chatId);
+        if (window == null) {
+            int capacity = chatWindow;
+            Chat chat = lockChat(chatId); // no message can be added while the window is filled
+            window = new ChatWindow(capacity, messageRepository.findAfter(chatId, chat.getLastSequence() - capacity));
+            ChatWindow previous = windows.putIfAbsent(chatId, window);
+            if (previous != null) {
+                window = previous;
+            }
+        }
+        return window;
+    }
+
     public Message createMessage(Message newMessage) {
         newMessage = messageRepository.saveAndFlush(newMessage);
         return newMessage;
     }
 
 
+    /** Get the messages of a chat that are newer than a time stamp. The messages are in the order they were added,
+     * so only the tail of the chat is searched and every message is parsed at most once.
+     * @param chatId = the id of the chat
+     * @param timeStamp = the time stamp of the newest message the client has
+     * @return a chat with the newer messages only
+     */
     public Chat getNewMessages(Long chatId, String timeStamp) {
 
         Chat chat = getChat(chatId);
-        int index = 0;
-
-        List<Message> newMessages = new ArrayList<>();
-
-        // check if chat is empty
-
-        if (!(chat.getMessage().isEmpty())) {
+        List<Message> messages = chat.getMessage();
+        int index = messages.size();
 
+        // search backwards for the first message that is not newer than the time stamp
+        if (!messages.isEmpty()) {
             DateTimeFormatter formatter = new Standard().getDateTimeFormatter();
-            Message message = chat.getMessage().get(index);
-
-            LocalDateTime messageTime = LocalDateTime.parse(message.getTimeStamp(), formatter);
-
             LocalDateTime searchedTime = LocalDateTime.parse(timeStamp, formatter);
-
-            // search for newer messages
-            for (int i = 0; i <= chat.getMessage().size() - 1; i++) {
-                message = chat.getMessage().get(i);
-                messageTime = LocalDateTime.parse(message.getTimeStamp(), formatter);
-                if (messageTime.isBefore(searchedTime) || messageTime.isEqual(searchedTime)) {
-                    index++;
-                }
+            while (index > 0 && LocalDateTime.parse(messages.get(index - 1).getTimeStamp(), formatter).isAfter(searchedTime)) {
+                index--;
             }
-            // send back List of Messages or Chat?
-            newMessages = new ArrayList<>(chat.getMessage().subList(index, chat.getMessage().size()));
-
         }
+        List<Message> newMessages = new ArrayList<>(messages.subList(index, messages.size()));
+
         Chat newChat = new Chat();
         newChat.setChatId(chatId);
+        newChat.setLastSequence(chat.getLastSequence());
         newChat.setMessages(newMessages);
 
         return newChat;
     }
 
-    // for generating the right time for a bot message
-    private String getCurrentDateString() {
-        LocalDateTime rightNow = LocalDateTime.now(ZoneId.of("UTC"));
-        String dateString = rightNow.toString();
-        String convert = dateString.substring(0, 10) + " " + dateString.substring(11, 19) + ":" + dateString.substring(20, 23);
-        return convert;
+    /** Get the messages of a chat after a sequence number. They come from the window of the chat in memory, messages
+     * with the same time stamp are never lost or sent twice. A cursor from before the window gets the whole window,
+     * the older messages are in the history.
+     * @param chatId = the id of the chat
+     * @param after = the sequence number of the newest message the client has, 0 for the whole window
+     * @return a chat with the newer messages only, its last sequence is the cursor for the next call
+     */
+    public Chat getMessagesAfter(Long chatId, long after) {
+        ChatWindow window = getWindow(chatId);
+
+        Chat newChat = new Chat();
+        newChat.setChatId(chatId);
+        synchronized (window) { // the messages and the cursor need to match
+            newChat.setLastSequence(window.getLastSequence());
+            newChat.setMessages(window.getAfter(after));
+        }
+
+        return newChat;
     }
 
-    ;
+    /** Open a stream of a chat. It starts with the messages the client has missed since the last event it got
+     * (at most the window of the chat) and continues with every new message, so the client does not need to poll.
+     * @param chatId = the id of the chat
+     * @param after = the sequence number of the newest message the client has, 0 for the whole window
+     * @return the stream of the chat
+     */
+    public SseEmitter subscribe(Long chatId, long after) {
+        ChatWindow window = getWindow(chatId); // a chat with subscribers always has its window, append publishes from there
+        synchronized (window) { // no message is added while the client catches up
+            return pushService.subscribe(getChatTopic(chatId), SseEmitter.event()
+                    .id(String.valueOf(window.getLastSequence())).name("chat")
+                    .data(toChatGetDTO(chatId, window.getLastSequence(), window.getAfter(after))));
+        }
+    }
 
-    // for generating a bot message
-    private Message generateBotMessage() {
+    // the topic under which the messages of a chat are pushed
+    public String getChatTopic(Long chatId) { return "chat/" + chatId; }
+
+    // the lobby or game of the chat is gone or over, forget its window and close the streams of the chat
+    public void closeChat(Long chatId) {
+        windows.remove(chatId);
+        pushService.close(getChatTopic(chatId));
+    }
+
+    // send new messages to everybody who listens to a chat, the event id is the cursor to continue after
+    private void publishMessages(Long chatId, long cursor, List<Message> messages) {
+        String topic = getChatTopic(chatId);
+        if (pushService.hasSubscribers(topic)) {
+            pushService.publish(topic, "chat", String.valueOf(cursor), toChatGetDTO(chatId, cursor, messages));
+        }
+    }
+
+    private ChatGetDTO toChatGetDTO(Long chatId, long cursor, List<Message> messages) {
+        Chat chat = new Chat();
+        chat.setChatId(chatId);
+        chat.setLastSequence(cursor);
+        chat.setMessages(messages);
+        return ChatDTOMapper.INSTANCE.convertEntityToChatGetDTO(chat);
+    }
+
+    /** Get a page of the archived messages of a chat, the messages that dropped out of its window
+     * @param chatId = the id of the chat
+     * @param before = the sequence number of the oldest message the client has, 0 to start with the newest archived ones
+     * @param size = the number of messages in the page, at most chatHistoryPage
+     * @return a chat with the page of messages in the order they were written, its last sequence is the sequence
+     * number of the oldest message in it (the before of the next page), 0 if there are no older messages
+     */
+    public Chat getHistory(Long chatId, long before, int size) {
+        getChat(chatId);
+        if (before <= 0) {
+            before = Long.MAX_VALUE;
+        }
+        int pageSize = Math.max(1, Math.min(size, chatHistoryPage));
+        List<ArchivedMessage> page = archivedMessageRepository.findBefore(chatId, before, PageRequest.of(0, pageSize));
+
+        List<Message> messages = new ArrayList<>();
+        for (int i = page.size() - 1; i >= 0; i--) { // the page comes newest first
+            messages.add(page.get(i).toMessage());
+        }
+
+        Chat history = new Chat();
+        history.setChatId(chatId);
+        history.setLastSequence(messages.isEmpty() ? 0 : messages.get(0).getSequence());
+        history.setMessages(messages);
+
+        return history;
+    }
+
+    /** Put a bot message in the queue of a chat, it is written with the next batch of that chat (flushBotMessages)
+     * @param chatId = the id of the chat
+     * @param template = the kind of bot message
+     * @param argument = the name or word that goes into the message
+     */
+    public void queueBotMessage(Long chatId, BotMessage template, String argument) {
         Message botMessage = new Message();
-        botMessage.setTimeStamp(getCurrentDateString());
+        botMessage.setTimeStamp(new Standard().fromEpochMilli(System.currentTimeMillis()));
         botMessage.setWriterName("BOT");
-        return botMessage;
+        botMessage.setMessage(template.format(argument));
+        pendingBotMessages.compute(chatId, (id, queue) -> {
+            List<Message> value = queue == null ? new ArrayList<>() : queue;
+            value.add(botMessage);
+            return value;
+        });
+    }
+
+    // write the queued bot messages of a chat in one batch, the chat is only locked once for all of them
+    public void flushBotMessages(Long chatId) {
+        List<Message> batch = pendingBotMessages.remove(chatId);
+        if (batch == null || batch.isEmpty()) {
+            return;
+        }
+        Chat chat = lockChat(chatId);
+        for (Message botMessage : batch) {
+            append(chat, botMessage);
+        }
+        messageRepository.saveAll(batch);
+        messageRepository.flush();
+    }
+
+    // write the bot messages that no game step has written yet, e.g. of a guess in a game that is waiting
+    @Scheduled(fixedDelay = 250)
+    public void flushAllBotMessages() {
+        for (Long chatId : new ArrayList<>(pendingBotMessages.keySet())) {
+            flushBotMessages(chatId);
+        }
     }
 
     // generating a message telling everyone who the drawer is
     public void currentDrawerMessage(Long chatId, String userName) {
-        Message botMessage = generateBotMessage();
-        String message = "The current drawer is " + userName + ".";
-        botMessage.setMessage(message);
-        getChat(chatId).setMessage(botMessage);
-        messageRepository.saveAndFlush(botMessage);
+        queueBotMessage(chatId, BotMessage.CURRENT_DRAWER, userName);
+        flushBotMessages(chatId);
     }
 
     // generating a message at the end of a round revealing the solution
     public void revealingSolutionMessage(Long chatId, String answer) {
-        Message botMessage = generateBotMessage();
-        String message = "The correct word was " + answer +".";
-        botMessage.setMessage(message);
-        getChat(chatId).setMessage(botMessage);
-        messageRepository.saveAndFlush(botMessage);
+        queueBotMessage(chatId, BotMessage.SOLUTION, answer);
+        flushBotMessages(chatId);
     }
 
     // generating a message when entering the lobby
     public void enteringLobbyMessage(Long chatId, String userName) {
-        Message botMessage = generateBotMessage();
-        String message = userName + " has entered the lobby.";
-        botMessage.setMessage(message);
-        getChat(chatId).setMessage(botMessage);
-        messageRepository.saveAndFlush(botMessage);
+        queueBotMessage(chatId, BotMessage.ENTERED_LOBBY, userName);
+        flushBotMessages(chatId);
     }
 
     // generating a message when leaving the lobby
     public void leavingLobbyMessage(Long chatId, String userName) {
-        Message botMessage = generateBotMessage();
-        String message = userName + " has left the lobby.";
-        botMessage.setMessage(message);
-        getChat(chatId).setMessage(botMessage);
-        messageRepository.saveAndFlush(botMessage);
+        queueBotMessage(chatId, BotMessage.LEFT_LOBBY, userName);
+        flushBotMessages(chatId);
     }
 
     // generating a message when leaving the game
     public void leavingGameMessage(Long chatId, String userName) {
-        Message botMessage = generateBotMessage();
-        String message = userName + " has left the game.";
-        botMessage.setMessage(message);
-        getChat(chatId).setMessage(botMessage);
-        messageRepository.saveAndFlush(botMessage);
+        queueBotMessage(chatId, BotMessage.LEFT_GAME, userName);
+        flushBotMessages(chatId);
     }
 
     // generating a message when guessing the word correct
     public void guessingWordMessage(Long chatId, String userName) {
-        Message botMessage = generateBotMessage();
-        String message = userName + " has guessed the word.";
-        botMessage.setMessage(message);
-        getChat(chatId).setMessage(botMessage);
-        messageRepository.saveAndFlush(botMessage);
+        queueBotMessage(chatId, BotMessage.GUESSED_WORD, userName);
+        flushBotMessages(chatId);
     }
 
 }
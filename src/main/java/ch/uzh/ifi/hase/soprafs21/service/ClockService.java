@@ -0,0 +1,21 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import org.springframework.stereotype.Service;
+
+/**
+ * Clock Service
+ * This class tells the timers what time it is. The time is counted in milliseconds since epoch, but it is measured
+ * with the monotonic System.nanoTime from the moment the server started, so it never jumps when the system clock is
+ * adjusted. Tests replace it with a mock to let the time pass without sleeping.
+ */
+@Service
+public class ClockService {
+
+    private final long startMillis = System.currentTimeMillis(); // [ms since epoch] when the clock was started
+    private final long startNanos = System.nanoTime(); // [ns] the monotonic time at that moment
+
+    // the current time in milliseconds since epoch
+    public long millis() {
+        return startMillis + (System.nanoTime() - startNanos) / 1_000_000L;
+    }
+}
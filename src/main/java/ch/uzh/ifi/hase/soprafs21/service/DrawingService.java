@@ -1,45 +1,72 @@
 package ch.uzh.ifi.hase.soprafs21.service;
 
+import ch.uzh.ifi.hase.soprafs21.constant.GameModes;
 import ch.uzh.ifi.hase.soprafs21.entity.BrushStroke;
 import ch.uzh.ifi.hase.soprafs21.entity.Drawing;
 import ch.uzh.ifi.hase.soprafs21.entity.Game;
 import ch.uzh.ifi.hase.soprafs21.entity.Round;
+import ch.uzh.ifi.hase.soprafs21.helper.DrawingRaster;
+import ch.uzh.ifi.hase.soprafs21.helper.DrawingSnapshot;
+import ch.uzh.ifi.hase.soprafs21.helper.LiveDrawing;
+import ch.uzh.ifi.hase.soprafs21.helper.PathSimplifier;
 import ch.uzh.ifi.hase.soprafs21.helper.Standard;
+import ch.uzh.ifi.hase.soprafs21.helper.StrokeCodec;
 import ch.uzh.ifi.hase.soprafs21.repository.BrushStrokeRepository;
 import ch.uzh.ifi.hase.soprafs21.repository.DrawingRepository;
 import ch.uzh.ifi.hase.soprafs21.repository.RoundRepository;
+import ch.uzh.ifi.hase.soprafs21.rest.dto.DrawingDeltaGetDTO;
+import ch.uzh.ifi.hase.soprafs21.rest.dto.DrawingGetDTO;
+import ch.uzh.ifi.hase.soprafs21.rest.mapper.DrawingDTOMapper;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.transaction.Transactional;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 
 import java.util.ArrayList;
 import java.util.Collections;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Transactional
 public class DrawingService {
 
+    public static final String DELTA_JSON = "json"; // a DrawingDeltaGetDTO
+    public static final String DELTA_BINARY = "binary"; // a delta encoded by the StrokeCodec
+    public static final String STROKES_JSON = "strokes"; // a plain list of DrawingGetDTOs
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
     private final RoundRepository roundRepository;
 
     private final DrawingRepository drawingRepository;
 
     private final BrushStrokeRepository brushStrokeRepository;
 
+    private final PushService pushService;
+
+    private final Map<Long, LiveDrawing> liveDrawings = new ConcurrentHashMap<>(); // the drawing being painted per game id
+
+    private final Map<Long, DrawingRaster> rasters = new ConcurrentHashMap<>(); // the picture of the live drawing per game id
+
     @Autowired
-    public DrawingService(@Qualifier("drawingRepository")DrawingRepository drawingRepository, RoundRepository roundRepository, BrushStrokeRepository brushStrokeRepository) {
+    public DrawingService(@Qualifier("drawingRepository")DrawingRepository drawingRepository, RoundRepository roundRepository, BrushStrokeRepository brushStrokeRepository, PushService pushService) {
         this.drawingRepository = drawingRepository;
         this.roundRepository = roundRepository;
         this.brushStrokeRepository = brushStrokeRepository;
+        this.pushService = pushService;
     }
 
     // get all the drawings
@@ -66,73 +93,349 @@ public class DrawingService {
 
     /** Get the latest brushstrokes of a drawing past a certain time
      * The method is used to update the picture users see in the front end. They send us the time at which they last
-     * updated and we send them all the information they have missed so far.
+     * updated and we send them all the information they have missed so far. The strokes of a drawing are kept in the
+     * order of their sequence numbers, while their time keys are still in order too the first new stroke is found with a
+     * binary search. The times come from the clients, after a late batch every stroke from the first newer one on is sent,
+     * so a stroke may come twice but is never skipped. Clients that can should ask by sequence (getStrokesAfter).
      *
      * @param drawing = the drawing they would like to see
      * @param timeStamp = the time from which onward they need the information
-     * @return a sorted list of all the need brush strokes starting from latest to newest
+     * @return all the needed brush strokes starting from oldest to newest
      */
     public List<BrushStroke> getDrawing(Drawing drawing, LocalDateTime timeStamp) {
-        int maxIndex = drawing.getBrushStrokes().size(); // get the size of the drawing
-        List<BrushStroke> result = new ArrayList<>(); // get the basic return value
-
-        if(!drawing.getBrushStrokes().isEmpty()) { // if the drawing is not empty we can look for the right part
-            int index = 0; // initiate the index
-
-            // setting everything up to iterate over the indexes to find the point after which the needed brush strokes are listed
-            DateTimeFormatter formatter = new Standard().getDateTimeFormatter();
-            BrushStroke brushStroke = drawing.getBrushStrokes().get(index);
-            LocalDateTime value = LocalDateTime.parse(brushStroke.getTimeStamp(), formatter);
-
-            // iterate over the saved brush strokes in drawing
-            while (index < maxIndex && (value.isBefore(timeStamp) || value.isEqual(timeStamp))) {
-                index++;
-                if (index < maxIndex) {
-                    brushStroke = drawing.getBrushStrokes().get(index);
-                    value = LocalDateTime.parse(brushStroke.getTimeStamp(), formatter);
+        List<BrushStroke> brushStrokes = drawing.getBrushStrokes();
+        long key = new Standard().toEpochMilli(timeStamp); // parse the requested time only once
+
+        int low = 0;
+        int high = brushStrokes.size();
+        if (drawing.isTimeOrdered()) { // binary search for the first brush stroke that is newer than the requested time
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (brushStrokes.get(middle).getTimeKey() <= key) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
                 }
             }
+        }
+        else { // the times jump back somewhere, look at them one by one
+            while (low < high && brushStrokes.get(low).getTimeKey() <= key) {
+                low++;
+            }
+        }
 
-            // get a sublist past the critical point
-
-
-            result = drawing.getBrushStrokes().subList(index, maxIndex);
+        // the tail is in the order the strokes were appended, so it only needs to be copied (a view would change with the drawing)
+        return new ArrayList<>(brushStrokes.subList(low, brushStrokes.size()));
+    }
 
-            // sort the list and then return it
-            try {
-                Collections.sort(result);
-            } catch (ClassCastException e) {
-                System.out.println("You tried to sort a list with objects that can not be compared with one another.");
-            }
+    /** Get the brush strokes of a drawing that came after a certain sequence number
+     * Every stroke gets the next sequence number of its drawing when it is added and strokes are only ever appended,
+     * so the stroke with sequence n sits at offset n - first sequence and no time stamps need to be compared.
+     * A cursor past the end of the drawing belongs to an earlier drawing, in which case the whole drawing is sent.
+     *
+     * @param drawing = the drawing they would like to see
+     * @param after = the last sequence number the client has already received
+     * @return all the brush strokes with a sequence number strictly greater than after
+     */
+    public List<BrushStroke> getStrokesAfter(Drawing drawing, long after) {
+        List<BrushStroke> brushStrokes = drawing.getBrushStrokes();
+        if (after > drawing.getLastSequence()) { // the cursor belongs to an earlier drawing
+            after = 0;
+        }
+        if (brushStrokes.isEmpty() || after == drawing.getLastSequence()) { // nothing new
+            return new ArrayList<>();
         }
 
-        return result;
+        long offset = Math.max(0, after + 1 - brushStrokes.get(0).getSequence());
+        return new ArrayList<>(brushStrokes.subList((int) Math.min(offset, brushStrokes.size()), brushStrokes.size()));
+    }
+
+    /** Ingest stage for a batch of brush strokes: sort them by time and drop the points of a line
+     * that are not needed to draw it within the tolerance of the game mode.
+     *
+     * @param brushStrokes = the batch as sent by the drawer
+     * @param gameMode = the mode of the game the strokes belong to
+     * @return the brush strokes worth storing, sorted by time
+     */
+    public ArrayList<BrushStroke> simplify(List<BrushStroke> brushStrokes, GameModes gameMode) {
+        List<BrushStroke> sorted = new ArrayList<>(brushStrokes);
+        Collections.sort(sorted); // compares primitive keys only
+        return new ArrayList<>(PathSimplifier.simplify(sorted, new Standard().getTolerance(gameMode)));
     }
 
-    /** Add a new brush stroke to an existing drawing while at the same time saving it in the repository
-     * and sorting the list within the drawing just to make sure it did not mix up the order of the brushstrokes.
+    /** Add new brush strokes to an existing drawing while at the same time saving them in the repository.
+     * A copy of the batch gets sorted by time, then every stroke gets the next sequence number of the drawing and is appended,
+     * so the list within the drawing never has to be sorted again. Only the new strokes are inserted (in jdbc batches)
+     * and the drawing itself only gets its last sequence updated, no matter how many strokes it already holds.
      *
      * @param drawing = the drawing we would like to add brush stroke to
      * @param brushStrokes = the brush strokes we are supposed to add
      */
     public void addStrokes(Drawing drawing, ArrayList<BrushStroke> brushStrokes) {
-        List<BrushStroke> allStrokes = new ArrayList<>();
-        // allStrokes.addAll(drawing.getBrushStrokes());
-        allStrokes.addAll(brushStrokes);
-
-        // for safety we check if it works
-        try {
-            Collections.sort(allStrokes); // sort list within drawing
+        List<BrushStroke> newStrokes = new ArrayList<>(brushStrokes);
+        Collections.sort(newStrokes); // sort the batch by time, compares primitive keys only, the caller's list stays as it is
+
+        // a batch that starts before the end of the drawing puts the time keys out of order
+        List<BrushStroke> oldStrokes = drawing.getBrushStrokes();
+        if (!newStrokes.isEmpty() && !oldStrokes.isEmpty()
+                && newStrokes.get(0).getTimeKey() < oldStrokes.get(oldStrokes.size() - 1).getTimeKey()) {
+            drawing.setTimeOrdered(false);
         }
-        catch (ClassCastException e) {
-            System.out.println("You tried to sort a list with objects that can not be compared with one another.");
+
+        // hand out the sequence numbers and append the strokes to the drawing
+        long sequence = drawing.getLastSequence();
+        for (BrushStroke brushStroke : newStrokes) {
+            sequence++;
+            brushStroke.setSequence(sequence);
+            brushStroke.setDrawingId(drawing.getId());
         }
 
+        // insert only the new strokes and keep the loaded drawing up to date
+        brushStrokeRepository.saveAll(newStrokes);
+        drawing.getBrushStrokes().addAll(newStrokes);
+        drawing.setLastSequence(sequence);
+
         // save the changes for the drawing
-        drawing.setBrushStrokes(allStrokes);
         drawingRepository.saveAndFlush(drawing);
     }
 
+    /** Open the live drawing of a game when its DRAWING phase starts, from then on strokes are kept in memory
+     * and written to the database in the background.
+     *
+     * @param gameId = the game that starts drawing
+     * @param gameMode = the mode of the game, it decides how much new lines get simplified
+     * @param round = the round whose current drawing is painted
+     * @return the live drawing of the game
+     */
+    public LiveDrawing openLiveDrawing(Long gameId, GameModes gameMode, Round round) {
+        double tolerance = new Standard().getTolerance(gameMode);
+        LiveDrawing liveDrawing = new LiveDrawing(gameId, round.getCurrentDrawing(), tolerance);
+        LiveDrawing previous = liveDrawings.put(gameId, liveDrawing);
+        if (previous != null) { // should not happen, but never lose strokes
+            flushLiveDrawing(previous);
+        }
+        DrawingRaster raster = new DrawingRaster(liveDrawing.getDrawingId());
+        raster.draw(liveDrawing.getStrokesAfter(0));
+        DrawingRaster previousRaster = rasters.put(gameId, raster);
+        if (previousRaster != null) {
+            previousRaster.dispose();
+        }
+
+        // tell the subscribers to start over with the new drawing
+        publishStrokes(gameId, liveDrawing.getDrawingId(), liveDrawing.getLastSequence(), new ArrayList<>());
+        return liveDrawing;
+    }
+
+    // close the live drawing of a game at the end of its DRAWING phase and save whatever is left
+    public void closeLiveDrawing(Long gameId) {
+        LiveDrawing liveDrawing = liveDrawings.remove(gameId);
+        if (liveDrawing != null) {
+            liveDrawing.close(); // a request that still holds it can not append anymore, so the last flush gets every stroke
+            flushLiveDrawing(liveDrawing);
+        }
+        DrawingRaster raster = rasters.remove(gameId);
+        if (raster != null) {
+            raster.dispose();
+        }
+    }
+
+    // get the live drawing of a game, null if the game is not drawing right now
+    public LiveDrawing getLiveDrawing(Long gameId) { return liveDrawings.get(gameId); }
+
+    /** Add new brush strokes to a live drawing, they are sorted, simplified and appended in memory only
+     * and sent to everybody who listens to the drawing of the game.
+     *
+     * @param liveDrawing = the live drawing we would like to add brush stroke to
+     * @param brushStrokes = the brush strokes we are supposed to add
+     * @return the sequence number of the newest stroke, -1 if the live drawing got closed and the strokes need to be saved in the drawing
+     */
+    public long addStrokes(LiveDrawing liveDrawing, List<BrushStroke> brushStrokes) {
+        List<BrushStroke> newStrokes = new ArrayList<>(brushStrokes);
+        Collections.sort(newStrokes); // sort the batch by time
+        newStrokes = PathSimplifier.simplify(newStrokes, liveDrawing.getTolerance());
+
+        synchronized (liveDrawing) { // subscribers get the strokes in the order they were appended
+            long lastSequence = liveDrawing.append(newStrokes);
+            if (lastSequence < 0) { // the DRAWING phase ended in the mean time
+                return lastSequence;
+            }
+            publishStrokes(liveDrawing.getGameId(), liveDrawing.getDrawingId(), lastSequence, newStrokes);
+            return lastSequence;
+        }
+    }
+
+    /** Send brush strokes to everybody who listens to the drawing of a game
+     *
+     * @param gameId = the game the drawing belongs to
+     * @param drawingId = the drawing the strokes belong to
+     * @param cursor = the sequence number of the last stroke
+     * @param brushStrokes = the new strokes, with their sequence numbers set
+     */
+    public void publishStrokes(Long gameId, Long drawingId, long cursor, List<BrushStroke> brushStrokes) {
+        String topic = getDrawingTopic(gameId);
+        if (pushService.hasSubscribers(topic)) {
+            DrawingDeltaGetDTO delta = toDelta(drawingId, cursor, brushStrokes);
+            pushService.publish(topic, "drawing", getEventId(drawingId, cursor), delta);
+        }
+    }
+
+    /** Get the brush strokes of a live drawing after a cursor, already serialized. Everybody asking with the same
+     * cursor gets the same byte array until new strokes are appended, so the guessers of a game that poll in
+     * lockstep only cost one conversion.
+     *
+     * @param liveDrawing = the drawing they would like to see
+     * @param after = the last sequence number the client has already received
+     * @param format = DELTA_JSON, DELTA_BINARY or STROKES_JSON
+     * @return the serialized answer
+     */
+    public byte[] getSerializedStrokesAfter(LiveDrawing liveDrawing, long after, String format) {
+        long cursor = liveDrawing.normalizeCursor(after);
+        byte[] value = liveDrawing.getCached(format, cursor);
+        if (value != null) {
+            return value;
+        }
+
+        List<BrushStroke> brushStrokes;
+        long lastSequence;
+        synchronized (liveDrawing) { // the strokes and the next cursor need to match
+            brushStrokes = liveDrawing.getStrokesAfter(cursor);
+            lastSequence = liveDrawing.getLastSequence();
+        }
+        value = serialize(format, liveDrawing.getDrawingId(), lastSequence, brushStrokes);
+        liveDrawing.putCached(format, cursor, lastSequence, value);
+        return value;
+    }
+
+    private byte[] serialize(String format, Long drawingId, long cursor, List<BrushStroke> brushStrokes) {
+        if (DELTA_BINARY.equals(format)) {
+            return StrokeCodec.encodeDelta(drawingId, cursor, brushStrokes);
+        }
+        try {
+            if (STROKES_JSON.equals(format)) {
+                List<DrawingGetDTO> value = new ArrayList<>();
+                for (BrushStroke brushStroke : brushStrokes) {
+                    value.add(DrawingDTOMapper.INSTANCE.convertEntityToDrawingGetDTO(brushStroke));
+                }
+                return OBJECT_MAPPER.writeValueAsBytes(value);
+            }
+            return OBJECT_MAPPER.writeValueAsBytes(toDelta(drawingId, cursor, brushStrokes));
+        }
+        catch (JsonProcessingException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "The brush strokes could not be converted.");
+        }
+    }
+
+    /** Open a stream of the drawing of a game. It starts with everything the client has missed since the
+     * last event it got and continues with every new brush stroke.
+     *
+     * @param gameId = the game of which the drawing is streamed
+     * @param drawing = the current drawing of the game, only used if the game is not drawing right now
+     * @param lastDrawingId = the drawing the client has seen last, null if unknown
+     * @param after = the last sequence number the client has already received
+     * @return the stream of the drawing
+     */
+    public SseEmitter subscribe(Long gameId, Drawing drawing, Long lastDrawingId, long after) {
+        String topic = getDrawingTopic(gameId);
+        LiveDrawing liveDrawing = getLiveDrawing(gameId);
+
+        if (liveDrawing != null) {
+            synchronized (liveDrawing) { // no stroke is appended while the client catches up
+                long cursor = liveDrawing.getDrawingId().equals(lastDrawingId) ? after : 0;
+                return pushService.subscribe(topic, toDeltaEvent(liveDrawing.getDrawingId(), liveDrawing.getLastSequence(),
+                        liveDrawing.getStrokesAfter(cursor)));
+            }
+        }
+        if (drawing == null) { // the game has not started drawing yet
+            return pushService.subscribe(topic, null);
+        }
+        long cursor = drawing.getId().equals(lastDrawingId) ? after : 0;
+        return pushService.subscribe(topic, toDeltaEvent(drawing.getId(), drawing.getLastSequence(),
+                getStrokesAfter(drawing, cursor)));
+    }
+
+    // the topic under which the drawing of a game is pushed
+    public String getDrawingTopic(Long gameId) { return "drawing/" + gameId; }
+
+    // the game is over, close the streams of its drawing
+    public void closeDrawingTopic(Long gameId) { pushService.close(getDrawingTopic(gameId)); }
+
+    // the id of an event, so a reconnecting client tells us both the drawing and the sequence it has seen
+    public String getEventId(Long drawingId, long cursor) { return drawingId + "-" + cursor; }
+
+    private SseEmitter.SseEventBuilder toDeltaEvent(Long drawingId, long cursor, List<BrushStroke> brushStrokes) {
+        return SseEmitter.event().id(getEventId(drawingId, cursor)).name("drawing").data(toDelta(drawingId, cursor, brushStrokes));
+    }
+
+    private DrawingDeltaGetDTO toDelta(Long drawingId, long cursor, List<BrushStroke> brushStrokes) {
+        DrawingDeltaGetDTO delta = new DrawingDeltaGetDTO();
+        delta.setDrawingId(drawingId);
+        delta.setCursor(cursor);
+        for (BrushStroke brushStroke : brushStrokes) {
+            delta.getBrushStrokes().add(DrawingDTOMapper.INSTANCE.convertEntityToDrawingGetDTO(brushStroke));
+        }
+        return delta;
+    }
+
+    // write-behind task, saves the new strokes of all live drawings in batches
+    @Scheduled(fixedDelay = 500)
+    public void flushLiveDrawings() {
+        for (LiveDrawing liveDrawing : liveDrawings.values()) {
+            flushLiveDrawing(liveDrawing);
+        }
+    }
+
+    // save the strokes of a live drawing that are not in the database yet
+    public void flushLiveDrawing(LiveDrawing liveDrawing) {
+        List<BrushStroke> newStrokes = liveDrawing.takeUnflushed();
+        if (!newStrokes.isEmpty()) {
+            brushStrokeRepository.saveAll(newStrokes);
+            brushStrokeRepository.flush();
+            drawingRepository.updateLastSequence(liveDrawing.getDrawingId(), newStrokes.get(newStrokes.size() - 1).getSequence());
+            if (!liveDrawing.isTimeOrdered()) { // getDrawing must not binary-search the saved strokes either
+                drawingRepository.markTimeUnordered(liveDrawing.getDrawingId());
+            }
+        }
+    }
+
+    /** Get a picture of the drawing of a game, so a client that joins late or reconnects can show it right away
+     * and only needs the strokes after the sequence of the picture. The picture of a live drawing is drawn
+     * incrementally when it is asked for, and only encoded again once new strokes came in since the last request.
+     * Any other drawing is drawn once from its saved strokes.
+     *
+     * @param gameId = the game of which the drawing is needed
+     * @param drawing = the current drawing of the game, only used if the game is not drawing right now
+     * @return the picture as PNG together with the sequence number of the last stroke on it
+     */
+    public DrawingSnapshot getSnapshot(Long gameId, Drawing drawing) {
+        LiveDrawing liveDrawing = getLiveDrawing(gameId);
+        DrawingRaster raster = rasters.get(gameId);
+        if (liveDrawing != null && raster != null) {
+            renderSnapshot(liveDrawing, raster);
+            return raster.snapshot();
+        }
+        if (drawing == null) { // the game has not started drawing yet
+            String noDrawing = "This game does not have a drawing yet.";
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, noDrawing);
+        }
+        DrawingRaster oneOff = new DrawingRaster(drawing.getId());
+        try {
+            oneOff.draw(drawing.getBrushStrokes());
+            return oneOff.snapshot();
+        }
+        finally {
+            oneOff.dispose();
+        }
+    }
+
+    // draw the strokes that are not on the picture yet
+    private void renderSnapshot(LiveDrawing liveDrawing, DrawingRaster raster) {
+        synchronized (raster) {
+            if (raster.getSequence() < liveDrawing.getLastSequence()) {
+                raster.draw(liveDrawing.getStrokesAfter(raster.getSequence()));
+            }
+        }
+    }
+
     // get all rounds
     public List<Round> getRounds() {
         return this.roundRepository.findAll();
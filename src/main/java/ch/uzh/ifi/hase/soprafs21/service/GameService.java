@@ -1,9 +1,12 @@
 package ch.uzh.ifi.hase.soprafs21.service;
 
+import ch.uzh.ifi.hase.soprafs21.constant.BotMessage;
+import ch.uzh.ifi.hase.soprafs21.constant.GamePhase;
 import ch.uzh.ifi.hase.soprafs21.constant.LobbyStatus;
 import ch.uzh.ifi.hase.soprafs21.constant.RoundStatus;
 import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs21.entity.*;
+import ch.uzh.ifi.hase.soprafs21.helper.GameProgress;
 import ch.uzh.ifi.hase.soprafs21.helper.Standard;
 import ch.uzh.ifi.hase.soprafs21.repository.GameRepository;
 import ch.uzh.ifi.hase.soprafs21.rest.mapper.BrushStrokeDTOMapper;
@@ -12,18 +15,27 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.server.ResponseStatusException;
 
-import java.time.LocalTime;
-import java.time.ZoneId;
+import javax.annotation.PreDestroy;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 import ch.uzh.ifi.hase.soprafs21.repository.*;
 
@@ -35,7 +47,7 @@ import ch.uzh.ifi.hase.soprafs21.repository.*;
  */
 @Service
 @Transactional
-public class GameService implements Runnable {
+public class GameService {
 
     private final Logger log = LoggerFactory.getLogger(GameService.class);
 
@@ -49,11 +61,24 @@ public class GameService implements Runnable {
     private final TimerService timerService;
     private final ScoreBoardService scoreBoardService;
     private final ChatService chatService;
+    private final DrawingService drawingService;
+    private final SchedulerService schedulerService;
+    private final SignalService signalService;
+    private final ClockService clockService;
 
-    private List<Game> gamesToBeRun = new ArrayList<Game>();
+    @Value("${game.runner:scheduler}")
+    private String runnerMode; // scheduler (steps on a shared pool), virtual (a virtual thread per game) or executor (bounded pool)
+
+    @Value("${game.runner.threads:64}")
+    private int runnerThreads; // games that run at the same time in executor mode
+
+    @Value("${game.poll.timeout:30000}")
+    private long longPollTimeout; // [ms] longest time a long poll waits for a change before it answers anyway
+
+    private ExecutorService gameRunner; // runs whole games in the virtual and executor modes, created when first needed
 
     @Autowired
-    public GameService(@Qualifier("gameRepository") GameRepository gameRepository, LobbyRepository lobbyRepository, UserRepository userRepository, RoundRepository roundRepository, RoundService roundService, LobbyService lobbyService, TimerService timerService, ScoreBoardService scoreBoardService, ChatService chatService) {
+    public GameService(@Qualifier("gameRepository") GameRepository gameRepository, LobbyRepository lobbyRepository, UserRepository userRepository, RoundRepository roundRepository, RoundService roundService, LobbyService lobbyService, TimerService timerService, ScoreBoardService scoreBoardService, ChatService chatService, DrawingService drawingService, SchedulerService schedulerService, SignalService signalService, ClockService clockService) {
         this.gameRepository = gameRepository;
         this.lobbyRepository = lobbyRepository;
         this.userRepository = userRepository;
@@ -63,6 +88,10 @@ public class GameService implements Runnable {
         this.timerService = timerService;
         this.scoreBoardService = scoreBoardService;
         this.chatService = chatService;
+        this.drawingService = drawingService;
+        this.schedulerService = schedulerService;
+        this.signalService = signalService;
+        this.clockService = clockService;
     }
 
     /** Huge method to create a game from the lobby id given to us. All the information should be stored and
@@ -138,12 +167,9 @@ public class GameService implements Runnable {
         newGame = gameRepository.save(newGame);
         gameRepository.flush();
          if(!newGame.getTestphase())  {
-        // create a separate thread that runs the game in the background
-        synchronized (gamesToBeRun) {
-            gamesToBeRun.add(newGame);
-            Thread t = new Thread(this);
-            t.start();
-        }}
+        // the game runs in the background
+        startGame(new GameProgress(newGame), 0);
+        }
 
         log.debug("Created and started new game with given information: {}", newGame);
         return newGame.getId();
@@ -151,25 +177,31 @@ public class GameService implements Runnable {
 
     // add points for a correct answer
     public void addPoints(Game game, Message message) {
-        // get the timer
-        Timer timer = game.getTimer();
+        // get the timer, the one in memory while the game is running
+        Timer timer = getTimer(game);
 
-        // get the local time from the message
-        int offSet = new Standard().getConvertToLocalTimeOffSet();
-        String part1 = message.getTimeStamp().substring(offSet,offSet+8); // hours, minute and seconds
-        String part2 = message.getTimeStamp().substring(offSet+8,offSet+12).replace(":","."); // milliseconds
-        String part3 = "000000"; // added zeros for nanoseconds
-        //LocalTime time = LocalTime.parse(part1 + part2 + part3); // transforming into LocalTime object
-        LocalTime time = LocalTime.now(ZoneId.of("UTC")); // used whenever we are testing
+        // get the time of the message
+        Long time = timerService.now(); // used whenever we are testing
 
         // pass it to the service
-        int points = timerService.remainingTime(timer,time);
-        int relPoints = (points / (timer.getDrawingTimeSpan() * 10) ) ; // makes a relative scale from 0 - 100, like percent
+        int relPoints = relativePoints(timer, time);
         scoreBoardService.addPoints(game.getScoreBoard(), message.getWriterName(), relPoints);
         Round round = roundService.getRound(game.getRoundId());
         roundService.addPoints(round, message.getWriterName(), relPoints);
     }
 
+    // the points a right guess in a game is worth right now, taken from the live timer, 0 if the game is not running
+    public int getGuessPoints(Long gameId) {
+        Timer timer = timerService.getLiveTimer(gameId, null);
+        return timer == null ? 0 : relativePoints(timer, timerService.now());
+    }
+
+    // the points for a guess at a point in time
+    private int relativePoints(Timer timer, long time) {
+        int points = timerService.remainingTime(timer,time);
+        return (points / (timer.getDrawingTimeSpan() * 10) ) ; // makes a relative scale from 0 - 100, like percent
+    }
+
     // quality of life method (logging in again after disconnect)
     public Game getGame(Long gameId) {
         Optional<Game> potGame = gameRepository.findById(gameId);
@@ -184,6 +216,48 @@ public class GameService implements Runnable {
 
         return value;
     }
+
+    // the version of the saved game without loading it, null if there is no such game
+    public Long getGameVersion(Long gameId) { return gameRepository.findStateVersion(gameId); }
+
+    // the version of the state of a game, it goes up whenever something happens a client may want to show
+    public long getStateVersion(Long gameId) { return signalService.getVersion(gameId); }
+
+    /** Long poll for the state of a game. The request is parked without a thread until the version of the game is
+     * different from the one the client knows or the wait is over, either way it is answered with the current state.
+     *
+     * @param gameId = the game the client is waiting for
+     * @param version = the version of the state the client has already seen
+     * @param waitMs = [ms] how long the client is willing to wait, at most the long poll timeout
+     * @param state = builds the answer, called once when the request is answered
+     * @return a result that is set when the state changed or the time is up
+     */
+    public <T> DeferredResult<T> awaitChange(Long gameId, long version, long waitMs, Supplier<T> state) {
+        long timeout = Math.min(waitMs, longPollTimeout);
+        CompletableFuture<Long> changed = signalService.changedSince(gameId, version);
+        if (timeout <= 0 || changed.isDone()) { // nothing to wait for, answer on the request thread
+            DeferredResult<T> result = new DeferredResult<>();
+            result.setResult(state.get());
+            return result;
+        }
+        DeferredResult<T> result = new DeferredResult<>(timeout);
+        result.onTimeout(() -> answer(result, state));
+        changed.whenComplete((signal, e) -> schedulerService.execute(() -> answer(result, state))); // not on the thread that signalled
+        return result;
+    }
+
+    // answer a long poll unless it got answered already
+    private <T> void answer(DeferredResult<T> result, Supplier<T> state) {
+        if (result.isSetOrExpired()) {
+            return;
+        }
+        try {
+            result.setResult(state.get());
+        }
+        catch (RuntimeException e) {
+            result.setErrorResult(e);
+        }
+    }
 /*
     // quality of life method (logging in again after disconnect)
     public Game getGameFromLobbyId(Long lobbyId) {
@@ -200,16 +274,19 @@ public class GameService implements Runnable {
         return value;
     }
 */
+    // the timer a game runs on, the one in memory while the game is running, a copy loaded from the database may lag behind
+    private Timer getTimer(Game game) { return timerService.getLiveTimer(game.getId(), game.getTimer()); }
+
     // start the timer for this phase
     public int startPhase(Game game) {
-        Timer timer = game.getTimer();
+        Timer timer = getTimer(game);
         timerService.begin(timer);
         return timerService.remainingTime(timer);
     }
 
     // end this phase and
     public void endPhase(Game game) {
-        Timer timer = game.getTimer();
+        Timer timer = getTimer(game);
         timerService.reset(timer);
         timerService.changePhase(timer);
     }
@@ -231,6 +308,8 @@ public class GameService implements Runnable {
         if (gameToUpdate.getPlayers().size() == 0) {
             gameRepository.delete(gameToUpdate);
             gameRepository.flush();
+            drawingService.closeDrawingTopic(gameId);
+            chatService.closeChat(gameId);
         }
         else
             // save into the repository
@@ -245,101 +324,270 @@ public class GameService implements Runnable {
     /**
      * Back-end specific methods needed to run the game in the background
      */
-    @Override
-    public void run() {
-        Game game;
-
-        /**
-         * pick the first game out of the list, even if it is not the one we originated from as long as everybody
-         * takes one, everything should be run
-         *
-         */
-
-        synchronized (gamesToBeRun) {
-            game = gamesToBeRun.get(0);
-            gamesToBeRun.remove(0);
+    // run a game in the background, the way the game.runner property asks for, its next step is due after the delay
+    private void startGame(GameProgress progress, long delay) {
+        timerService.register(progress.getGameId(), progress.getGame().getTimer()); // the clock of the game moves in memory
+        if ("virtual".equals(runnerMode) || "executor".equals(runnerMode)) {
+            getGameRunner().execute(() -> runGame(progress, delay));
+        } else {
+            scheduleStep(progress, delay);
+        }
+    }
+
+    // run a game from start to end on the calling thread
+    public void runGame(Game game) { runGame(new GameProgress(game), 0); }
+
+    // run the steps of a game on the calling thread, between the steps it waits for the next step to be due or a signal
+    private void runGame(GameProgress progress, long delay) {
+        Long gameId = progress.getGameId();
+        try {
+            CompletableFuture<Long> signal = signalService.next(gameId);
+            while (delay >= 0) {
+                if (delay > 0) {
+                    try {
+                        signal.get(delay, TimeUnit.MILLISECONDS);
+                    }
+                    catch (TimeoutException | ExecutionException | CancellationException e) {
+                        // the step is due
+                    }
+                }
+                signal = signalService.next(gameId); // taken before the step looks at the game
+                delay = step(progress);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (RuntimeException e) {
+            log.error("Game {} stopped, a step failed", gameId, e);
+        }
+        finally {
+            finishGame(gameId);
+        }
+    }
+
+    /** Pick up the games that were running when the server stopped. Every step saves the phase of its game and
+     * when the next step is due, so a game continues with the step it was waiting for (a step that was cut off
+     * halfway is run again). The strokes of a drawing that is being painted are reloaded from the database.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeGames() {
+        for (Game game : gameRepository.findRunning(GamePhase.DONE)) {
+            try {
+                GameProgress progress = new GameProgress(game);
+                if (game.getRoundId() != null) {
+                    progress.setRound(roundService.getRound(game.getRoundId()));
+                }
+                if (progress.getPhase() == GamePhase.DRAWING) {
+                    drawingService.openLiveDrawing(game.getId(), game.getGameModes(), progress.getRound());
+                }
+
+                long delay = 0;
+                if (game.getPhaseDeadline() != null) {
+                    delay = Math.max(0, game.getPhaseDeadline() - clockService.millis()); // the clock the timers run on
+                }
+                log.info("Resuming game {} in phase {}, next step in {} ms", game.getId(), progress.getPhase(), delay);
+                startGame(progress, delay);
+            }
+            catch (RuntimeException e) {
+                log.error("Game {} could not be resumed", game.getId(), e);
+            }
         }
-        int roundIndex = 0, numberOfRounds = game.getNumberOfRounds(); // index and total number of rounds
-        int playerIndex = 0, numberOfPlayers = game.getPlayers().size(); // index and total number of players
-        int haveGuessed;
-        Round round;
-
-        while(roundIndex < numberOfRounds) { // for each round
-            playerIndex = 0;
-            round = roundService.createRound(game);
-            game.setRoundTracker(roundIndex);
-            while(playerIndex < numberOfPlayers) { // for each player
+    }
+
+    // the threads for the virtual and executor modes, virtual threads need Java 21 or later, before that a bounded pool is used
+    private synchronized ExecutorService getGameRunner() {
+        if (gameRunner == null) {
+            if ("virtual".equals(runnerMode)) {
+                try {
+                    gameRunner = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                }
+                catch (ReflectiveOperationException e) {
+                    log.warn("Virtual threads are not available on Java {}, games run on a bounded pool", Runtime.version().feature());
+                }
+            }
+            if (gameRunner == null) {
+                gameRunner = Executors.newFixedThreadPool(runnerThreads);
+            }
+        }
+        return gameRunner;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (gameRunner != null) {
+            gameRunner.shutdownNow();
+        }
+    }
+
+    // let the scheduler run the next step of a game after a delay, every step schedules the one after it
+    private void scheduleStep(GameProgress progress, long delay) {
+        schedulerService.schedule(progress.getGameId(), () -> runStep(progress), delay);
+    }
+
+    // run a step on the scheduler, a phase that waits for the players also wakes up with the next signal of the game
+    private void runStep(GameProgress progress) {
+        Long gameId = progress.getGameId();
+        CompletableFuture<Long> signal = signalService.next(gameId); // taken before the step looks at the game
+        long next = step(progress);
+        if (next < 0) {
+            schedulerService.cancel(gameId);
+            finishGame(gameId);
+            return;
+        }
+        scheduleStep(progress, next);
+        if (progress.isWaiting() && progress.getWakeUp() != signal) {
+            progress.setWakeUp(signal);
+            signal.thenRun(() -> scheduleStep(progress, 0)); // replaces the step that waits for the time to run out
+        }
+    }
+
+    // the game is over, forget what was kept in memory for it and close the streams of its drawing and chat
+    private void finishGame(Long gameId) {
+        signalService.remove(gameId);
+        timerService.unregister(gameId);
+        roundService.closeGuessMatcher(gameId);
+        drawingService.closeDrawingTopic(gameId);
+        chatService.closeChat(gameId);
+    }
+
+    /** Move a game one step forward. A game goes through its rounds, in every round each player picks a word
+     * (SELECTING) and draws it (DRAWING) before the solution is revealed (REVEALING) and it is the next drawer's turn.
+     * A phase that waits for the players is due again when its time runs out, the SignalService wakes it up earlier
+     * when it may end (the drawer picked a word or a player guessed it), so no thread has to sleep while a game runs.
+     *
+     * @param progress = the phase, round and player the game is at, gets updated
+     * @return [ms] time after which the next step is due, -1 if the game is over
+     */
+    public long step(GameProgress progress) {
+        synchronized (progress) { // a signal and the end of the time may come together
+            GamePhase phase = progress.getPhase();
+            long delay = nextStep(progress);
+            saveProgress(progress, delay);
+            chatService.flushBotMessages(progress.getGameId()); // the bot messages of this step and the guesses since the last one
+            if (progress.getPhase() != phase) { // the clients that wait for the next phase get it right away, the game does not wake itself up
+                signalService.notifyClients(progress.getGameId());
+            }
+            return delay;
+        }
+    }
+
+    // remember the phase of a game and when its next step is due, so it can be resumed after a restart
+    private void saveProgress(GameProgress progress, long delay) {
+        Long deadline = delay < 0 ? null : clockService.millis() + delay;
+        gameRepository.updateProgress(progress.getGameId(), progress.getPhase(), deadline, progress.getRoundIndex(), progress.getPlayerIndex());
+    }
+
+    private long nextStep(GameProgress progress) {
+        Game game = progress.getGame();
+        Round round = progress.getRound();
+
+        switch (progress.getPhase()) {
+            case NEW_ROUND:
+                if (progress.getRoundIndex() >= progress.getNumberOfRounds()) { // the game is over
+                    round = roundService.getRound(game.getRoundId());
+                    round.setStatus(RoundStatus.DONE);
+                    roundRepository.saveAndFlush(round);
+                    progress.setPhase(GamePhase.DONE);
+                    return -1;
+                }
+                progress.setPlayerIndex(0);
+                progress.setRound(roundService.createRound(game));
+                game.setRoundTracker(progress.getRoundIndex());
+                progress.setPhase(GamePhase.NEXT_DRAWER);
+                return 0;
+
+            case NEXT_DRAWER:
                 // pick a new drawer and select
                 roundService.setNewPainter(round);
-                chatService.currentDrawerMessage(game.getId(), round.getDrawerName());
-                roundService.setRoundIndex(round,playerIndex);
+                chatService.queueBotMessage(game.getId(), BotMessage.CURRENT_DRAWER, round.getDrawerName());
+                roundService.setRoundIndex(round, progress.getPlayerIndex());
                 roundService.resetChoice(round);
                 roundService.changePhase(round);
-                startPhase(game);
+                progress.setPhase(GamePhase.SELECTING);
+                return untilPhaseEnds(startPhase(game));
+
+            case SELECTING:
+                round = roundService.getRound(round.getId()); // get the latest changes for the round
+                progress.setRound(round);
                 // wait for drawer to chose a word
-                if(!game.getTestphase()) {
-                    try {
-                        while (!timerService.done(game.getTimer()) && round.getWord() == null) {
-                            TimeUnit.SECONDS.sleep(1);
-                            round = roundService.getRound(round.getId());
-                        }
-                    }
-                    catch (InterruptedException e) {
-                        // needs to be implemented -> player has chosen a word before the timer ran out
-                    }
+                if (!game.getTestphase() && !timerService.done(getTimer(game)) && round.getWord() == null) {
+                    return untilPhaseEnds(timerService.remainingTime(getTimer(game)));
                 }
                 // select word drawer pick or pick one yourself
                 endPhase(game);
-                round = roundService.getRound(round.getId()); // get the latest changes for the round
                 if (round.getWord() == null) {
                     roundService.makeChoiceForUser(round);
                 }
                 // let players draw and guess the word
                 roundService.changePhase(round);
-                startPhase(game);
-                if(!game.getTestphase()) {
-                    try {
-                        haveGuessed = 0;
-                        while (!timerService.done(game.getTimer()) && haveGuessed < numberOfPlayers - 1) {
-                            TimeUnit.SECONDS.sleep(1);
-                            haveGuessed = 0;
-                            round = roundService.getRound(round.getId());
-                            for (int i = 0; i < round.getHasGuessed().length; i++) {
-                                if (round.getHasGuessed()[i] == true) {
-                                    haveGuessed++;
-                                }
-                            }
-                        }
-                    }
-                    catch (InterruptedException e) {
-                        // needs to be implemented -> all player have guessed the word correctly before the timer ran out
+                roundService.openGuessMatcher(round); // the guesses are checked in memory from now on
+                progress.setPhase(GamePhase.DRAWING);
+                int remaining = startPhase(game);
+                drawingService.openLiveDrawing(game.getId(), game.getGameModes(), round); // strokes stay in memory while drawing
+                return untilPhaseEnds(remaining);
+
+            case DRAWING:
+                // wait until everybody has guessed or the time is up
+                if (!game.getTestphase()) {
+                    round = roundService.getRound(round.getId()); // get the latest guesses
+                    roundService.applyGuesses(round); // the ones in memory may not be saved yet
+                    progress.setRound(round);
+                    if (!timerService.done(getTimer(game)) && countGuessed(round) < progress.getNumberOfPlayers() - 1) {
+                        return untilPhaseEnds(timerService.remainingTime(getTimer(game)));
                     }
                 }
-                // finish this round, pass the results
+                progress.setPhase(GamePhase.REVEALING);
+                return 0;
+
+            case REVEALING:
+                // finish this turn, pass the results
+                drawingService.closeLiveDrawing(game.getId()); // save the rest of the drawing
                 endPhase(game);
                 round = roundService.getRound(game.getRoundId());
+                roundService.applyGuesses(round); // the guesses and points in memory may not be saved yet
                 game = getGame(game.getId());
+                progress.setGame(game);
+                progress.setRound(round);
 
                 int painterPoints = roundService.computeRewardPainter(round);
 
-                scoreBoardService.addPoints(game.getScoreBoard(),round.getDrawerName(),painterPoints);
-                chatService.revealingSolutionMessage(game.getId(), round.getWord());
+                scoreBoardService.queuePoints(game.getId(), round.getDrawerName(), painterPoints); // the guessers got theirs with each right guess
+                scoreBoardService.writePoints(game.getId()); // on the scoreboard before the next turn shows it
+                chatService.queueBotMessage(game.getId(), BotMessage.SOLUTION, round.getWord());
                 roundService.resetHasGuessed(round);
                 roundService.resetGotPoints(round);
-                playerIndex++;
-                numberOfPlayers = game.getPlayers().size();
+                progress.setPlayerIndex(progress.getPlayerIndex() + 1);
+                progress.setNumberOfPlayers(game.getPlayers().size());
+
+                if (progress.getPlayerIndex() < progress.getNumberOfPlayers()) { // next drawer
+                    progress.setPhase(GamePhase.NEXT_DRAWER);
+                } else { // next round
+                    progress.setRoundIndex(progress.getRoundIndex() + 1);
+                    progress.setPhase(GamePhase.NEW_ROUND);
+                }
+                return 0;
+
+            default:
+                return -1;
+        }
+    }
+
+    // the time until a waiting phase is over, unless a signal ends it earlier
+    private long untilPhaseEnds(int remainingTime) { return Math.max(0, remainingTime); }
+
+    // count the players that have guessed the word of a round
+    private int countGuessed(Round round) {
+        int haveGuessed = 0;
+        for (int i = 0; i < round.getHasGuessed().length; i++) {
+            if (round.getHasGuessed()[i]) {
+                haveGuessed++;
             }
-            roundIndex++;
         }
-        round = roundService.getRound(game.getRoundId());
-        round.setStatus(RoundStatus.DONE);
-        roundRepository.saveAndFlush(round);
+        return haveGuessed;
     }
 
 
-    public void set_testgames(Game testgame){
-        gamesToBeRun.add(testgame);
- }
 
 
     // (Issue #52 Part I) function to handle when a user has made a guess (should also #56)
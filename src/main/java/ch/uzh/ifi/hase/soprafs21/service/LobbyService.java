@@ -209,7 +209,8 @@ public class LobbyService {
 
     }
 
-    public void removeLobbyMembers(Long lobbyId, String userName, Boolean leavingGame) {
+    // remove a member from a lobby, true if it was the last one and the lobby got deleted
+    public boolean removeLobbyMembers(Long lobbyId, String userName, Boolean leavingGame) {
 
         Lobby lobbytoupdate = getLobby(lobbyId);
         User user = userRepository.findByUsername(userName);
@@ -227,7 +228,8 @@ public class LobbyService {
         }
 
         // delete the lobby if there are no more members in the lobby
-        if (lobbytoupdate.getMembers().size() == 0) {
+        boolean deleted = lobbytoupdate.getMembers().size() == 0;
+        if (deleted) {
             lobbyRepository.delete(lobbytoupdate);
             lobbyRepository.flush();
         }
@@ -237,6 +239,7 @@ public class LobbyService {
             lobbyRepository.flush();
         userRepository.save(user);
         userRepository.flush();
+        return deleted;
     }
 
     public void returnLobbyMembers (Long lobbyId, String userName) {
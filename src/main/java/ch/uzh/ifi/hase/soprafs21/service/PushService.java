@@ -0,0 +1,168 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Push Service
+ * This class keeps the open server-sent event streams of the clients, grouped by topic (e.g. "drawing/3"),
+ * and sends events to every client that listens to a topic. Events carry an id (e.g. a sequence number)
+ * so a client that reconnects can tell us with the Last-Event-ID header where to continue.
+ * Publishing only queues the event, a pool of its own sends the events of a topic in order, so a slow client
+ * never holds up the thread that published. A topic is dropped as soon as nobody listens to it anymore.
+ */
+@Service
+public class PushService {
+
+    private final Logger log = LoggerFactory.getLogger(PushService.class);
+
+    private final Map<String, Topic> topics = new ConcurrentHashMap<>();
+    private final Executor sender;
+    private final long timeout; // [ms] time after which a stream is closed, the client reconnects
+
+    // the streams of a topic and the events that still have to be sent to them
+    private static class Topic {
+        private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+        private final Queue<Runnable> events = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean sending = new AtomicBoolean(false); // at most one thread sends the events of a topic
+    }
+
+    @Autowired
+    public PushService(@Value("${push.threads:2}") int threads, @Value("${push.timeout:300000}") long timeout) {
+        this(Executors.newFixedThreadPool(threads), timeout);
+    }
+
+    // send on a given executor, so tests can send on the calling thread
+    PushService(Executor sender, long timeout) {
+        this.sender = sender;
+        this.timeout = timeout;
+    }
+
+    /** Open a new stream for a topic. The greeting is queued like any published event, so it is sent by the thread
+     * that sends the events of the topic and reaches the new stream before anything published later, which is
+     * where a client gets everything it missed. The caller holds the lock it publishes the topic under while it
+     * builds the greeting, so nothing is published between the greeting and the stream joining the topic.
+     *
+     * @param topic = the topic the client listens to
+     * @param greeting = the first event for this client, may be null
+     * @return the stream that needs to be returned to the client
+     */
+    public SseEmitter subscribe(String topic, SseEmitter.SseEventBuilder greeting) {
+        SseEmitter emitter = new SseEmitter(timeout);
+
+        emitter.onCompletion(() -> unsubscribe(topic, emitter));
+        emitter.onTimeout(() -> unsubscribe(topic, emitter));
+        emitter.onError(e -> unsubscribe(topic, emitter));
+
+        Topic current = topics.compute(topic, (key, value) -> { // only events published from now on reach the new stream
+            Topic joined = value != null ? value : new Topic();
+            if (greeting != null) { // queued before the stream is visible to publish, so it comes first
+                joined.events.add(() -> deliver(topic, emitter, greeting));
+            }
+            joined.emitters.add(emitter);
+            return joined;
+        });
+        send(current);
+        return emitter;
+    }
+
+    /** Send an event to every stream of a topic, streams that can not be reached anymore get closed.
+     * The event is only queued here, it reaches the streams that listen to the topic right now.
+     *
+     * @param topic = the topic of the event
+     * @param name = the name of the event
+     * @param id = the id of the event, a client reconnecting after this event sends it back to us
+     * @param data = the content of the event, sent as JSON
+     */
+    public void publish(String topic, String name, String id, Object data) {
+        Topic current = topics.get(topic);
+        if (current == null || current.emitters.isEmpty()) {
+            return;
+        }
+        List<SseEmitter> receivers = new ArrayList<>(current.emitters); // a stream that comes later was greeted with this event
+        current.events.add(() -> {
+            for (SseEmitter emitter : receivers) {
+                deliver(topic, emitter, SseEmitter.event().id(id).name(name).data(data));
+            }
+        });
+        send(current);
+    }
+
+    // send an event to one stream, a stream that can not be reached anymore gets closed
+    private void deliver(String topic, SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+        }
+        catch (IOException | IllegalStateException e) {
+            log.debug("Dropping a subscriber of {}: {}", topic, e.getMessage());
+            unsubscribe(topic, emitter);
+            emitter.completeWithError(e);
+        }
+    }
+
+    // start sending the queued events of a topic, unless a thread is already at it
+    private void send(Topic current) {
+        if (!current.sending.compareAndSet(false, true)) {
+            return;
+        }
+        sender.execute(() -> {
+            Runnable event;
+            while ((event = current.events.poll()) != null) { // keep the events of a topic in order
+                event.run();
+            }
+            current.sending.set(false);
+            if (!current.events.isEmpty()) { // an event that was queued while the thread stopped
+                send(current);
+            }
+        });
+    }
+
+    // check if anybody listens to a topic
+    public boolean hasSubscribers(String topic) {
+        Topic current = topics.get(topic);
+        return current != null && !current.emitters.isEmpty();
+    }
+
+    // close all the streams of a topic (e.g. when the game is over)
+    public void close(String topic) {
+        Topic current = topics.remove(topic);
+        if (current != null) {
+            for (SseEmitter emitter : current.emitters) {
+                emitter.complete();
+            }
+        }
+    }
+
+    // forget a stream, the topic goes with its last stream
+    private void unsubscribe(String topic, SseEmitter emitter) {
+        topics.computeIfPresent(topic, (key, current) -> {
+            current.emitters.remove(emitter);
+            return current.emitters.isEmpty() ? null : current;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (sender instanceof ExecutorService) {
+            ((ExecutorService) sender).shutdownNow();
+        }
+    }
+}
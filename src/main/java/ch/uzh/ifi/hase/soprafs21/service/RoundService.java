@@ -2,7 +2,9 @@ package ch.uzh.ifi.hase.soprafs21.service;
 
 import ch.uzh.ifi.hase.soprafs21.constant.GameModes;
 import ch.uzh.ifi.hase.soprafs21.entity.*;
+import ch.uzh.ifi.hase.soprafs21.helper.GuessMatcher;
 import ch.uzh.ifi.hase.soprafs21.helper.Standard;
+import ch.uzh.ifi.hase.soprafs21.helper.StateVersion;
 import ch.uzh.ifi.hase.soprafs21.repository.DrawingRepository;
 import ch.uzh.ifi.hase.soprafs21.repository.GameRepository;
 import ch.uzh.ifi.hase.soprafs21.repository.RoundRepository;
@@ -14,11 +16,14 @@ import org.springframework.stereotype.Service;
 import javax.script.*;
 
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.client.RestTemplate;
 import ch.uzh.ifi.hase.soprafs21.controller.PokémonController;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import org.json.JSONObject;
 
 import static ch.uzh.ifi.hase.soprafs21.constant.RoundStatus.*;
@@ -32,12 +37,19 @@ public class RoundService {
     private final DrawingRepository drawingRepository;
     private final UserRepository userRepository;
 
+    private final SignalService signalService;
+    private final SchedulerService schedulerService;
+
+    private final Map<Long, GuessMatcher> guessMatchers = new ConcurrentHashMap<>(); // the turn that is drawing per game id
+
     @Autowired
-    public RoundService(@Qualifier("roundRepository") RoundRepository roundRepository, GameRepository gameRepository, DrawingRepository drawingRepository, UserRepository userRepository) {
+    public RoundService(@Qualifier("roundRepository") RoundRepository roundRepository, GameRepository gameRepository, DrawingRepository drawingRepository, UserRepository userRepository, SignalService signalService, SchedulerService schedulerService) {
         this.gameRepository = gameRepository;
         this.roundRepository = roundRepository;
         this.drawingRepository = drawingRepository;
         this.userRepository = userRepository;
+        this.signalService = signalService;
+        this.schedulerService = schedulerService;
     }
 
     // get a specific round quality of life
@@ -55,6 +67,9 @@ public class RoundService {
         return value;
     }
 
+    // get the version of the current round of a game without loading it, null if the game has no round
+    public Long getRoundVersion(Long gameId) { return roundRepository.findStateVersionByGameId(gameId); }
+
     public int getRandomNumber(int min, int max) {
         return (int) ((Math.random() * (max - min)) + min);
     }
@@ -95,6 +110,7 @@ public class RoundService {
 
         // get all the players (might get updated)
         round.setPlayers(game.getPlayers());
+        round.setGameId(game.getId());
 
         ArrayList<String> words = new ArrayList<>();
         int choices = new Standard().getNumberOfChoices();
@@ -244,6 +260,7 @@ public class RoundService {
             String wordOfChoice = round.getWords().get(index * numberOfChoices + choice);
             round.setWord(wordOfChoice);
             roundRepository.saveAndFlush(round);
+            signalAfterCommit(round.getGameId()); // the game can start drawing right away
         }
     }
 
@@ -276,42 +293,107 @@ public class RoundService {
 
     // function to handle when a user has made a guess
     public boolean makeGuess(Message message, Round round) {
-       /* if (round.getStatus().equals(SELECTING)) { // check if the phase of the round is correct
-            String notCorrectPhase = "This round is not in a drawing phase right now. Chances are you missed the opportunity to get points.";
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format(notCorrectPhase));
-        }*/ //else { // continue with the checks
-            boolean isPartOfGame = round.getPlayers().contains(message.getWriterName()); // check if the writer is part of the game
-            boolean isNotPainter = !message.getWriterName().equals(round.getDrawerName()); // check a person other then the painter has made a guess
-            String lowerCaseMessage = message.getMessage().toLowerCase();
-            String lowerCaseWord = round.getWord().toLowerCase();
-            boolean isRightWord = lowerCaseMessage.equals(lowerCaseWord); // check if the guess is correct
-            boolean hasNotGuessedYet = false; // default value
-
-            // more precise evaluation of "hasNotGuessedYet"
-            int playerIndex = 0;
-            if(isPartOfGame) {
-                playerIndex = round.getPlayers().indexOf(message.getWriterName());
-                hasNotGuessedYet = !round.getHasGuessed()[playerIndex];
-            }
+        if (round.getWord() == null) { // nothing to guess yet
+            return false;
+        }
+        GuessMatcher matcher = openGuessMatcher(round);
+        int playerIndex = matcher.match(message.getWriterName(), message.getMessage());
+        if (playerIndex < 0) {
+            return false;
+        }
+        round.getHasGuessed()[playerIndex] = true; // the copy of the caller sees it right away
+        saveGuesses(matcher);
+        signalAfterCommit(round.getGameId()); // maybe everybody has guessed now
+        return true;
+    }
 
-            // summaries, make all the checks together
-            boolean value = isNotPainter && isPartOfGame && isRightWord && hasNotGuessedYet;
+    /** Check a guess in a game without reading the database, the turn that is drawing keeps its word, who has
+     * guessed and their points in memory. A right guess is saved in the background.
+     * @param gameId = the game the guess was made in
+     * @param message = the guess, with the player who made it
+     * @param points = the points the guess is worth if it is right
+     * @return true if the guess is right and the first one of this player, false otherwise or if the game is not drawing
+     */
+    public boolean checkGuess(Long gameId, Message message, int points) {
+        GuessMatcher matcher = guessMatchers.get(gameId);
+        if (matcher == null) {
+            return false;
+        }
+        int playerIndex = matcher.match(message.getWriterName(), message.getMessage());
+        if (playerIndex < 0) {
+            return false;
+        }
+        matcher.setPoints(playerIndex, points);
+        saveGuesses(matcher);
+        signalAfterCommit(gameId); // maybe everybody has guessed now
+        return true;
+    }
 
-            // if it is a correct guess, remember that that player has guessed
-            if(value) {
-                boolean[] temp = round.getHasGuessed();
-                temp[playerIndex] = true;
-                round.setHasGuessed(temp);
-                roundRepository.saveAndFlush(round);
+    /** Get the guess matcher of the turn a round is in, a new one is made when the round has a new word
+     * @param round = a round that is drawing, with its word chosen
+     * @return the matcher that decides the guesses of this turn
+     */
+    public GuessMatcher openGuessMatcher(Round round) {
+        GuessMatcher matcher = round.getGameId() == null ? null : guessMatchers.get(round.getGameId());
+        if (matcher != null && matcher.isFor(round.getId(), round.getWord())) {
+            return matcher;
+        }
+        matcher = new GuessMatcher(round.getId(), round.getWord(), round.getDrawerName(), round.getPlayers(), round.getHasGuessed(), round.getGotPoints());
+        if (round.getGameId() != null) {
+            GuessMatcher previous = guessMatchers.put(round.getGameId(), matcher);
+            if (previous != null) {
+                previous.close();
             }
+        }
+        return matcher;
+    }
 
-            // either way return the value
-            return value;
-        //}
+    // bring who has guessed in a round and their points up to date with the turn in memory, the saved ones may lag behind
+    public void applyGuesses(Round round) {
+        openGuessMatcher(round).applyTo(round.getHasGuessed(), round.getGotPoints());
+    }
+
+    // the turn of a game is over, its guesses are not checked or saved anymore
+    public void closeGuessMatcher(Long gameId) {
+        GuessMatcher matcher = guessMatchers.remove(gameId);
+        if (matcher != null) {
+            matcher.close(); // waits for a save that is running
+        }
+    }
+
+    // wake the game up once the change is committed, a step that reloads the round earlier would miss it and wait for its timer
+    private void signalAfterCommit(Long gameId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() { signalService.signal(gameId); }
+            });
+        }
+        else {
+            signalService.signal(gameId);
+        }
+    }
+
+    // save who has guessed and their points in the background, a storm of guesses only leads to a few writes
+    private void saveGuesses(GuessMatcher matcher) {
+        if (!matcher.markDirty()) { // the write that is on its way takes this guess along
+            return;
+        }
+        schedulerService.execute(() -> {
+            synchronized (matcher) { // the turn can not end in the middle of a write
+                matcher.clearDirty();
+                if (!matcher.isClosed()) {
+                    roundRepository.updateGuesses(matcher.getRoundId(), matcher.getHasGuessed(), matcher.getGotPoints(), StateVersion.next());
+                }
+            }
+        });
     }
 
     // at the end of drawing phase reset everybody's has guessed status
     public void resetHasGuessed(Round round) {
+        if (round.getGameId() != null) {
+            closeGuessMatcher(round.getGameId());
+        }
         Arrays.fill(round.getHasGuessed(), false);
         roundRepository.saveAndFlush(round);
     }
@@ -328,6 +410,11 @@ public class RoundService {
         int[] pointArray = round.getGotPoints();
         pointArray[index] = points;
         round.setGotPoints(pointArray);
+        GuessMatcher matcher = round.getGameId() == null ? null : guessMatchers.get(round.getGameId());
+        if (matcher != null && matcher.isFor(round.getId(), round.getWord())) { // the round is saved whole, with the guesses
+            matcher.setPoints(index, points); // a later write of the matcher keeps them
+            matcher.applyTo(round.getHasGuessed(), round.getGotPoints());
+        }
         roundRepository.saveAndFlush(round);
     }
 
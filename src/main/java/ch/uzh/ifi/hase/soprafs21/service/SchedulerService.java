@@ -0,0 +1,95 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import ch.uzh.ifi.hase.soprafs21.helper.TimingWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Scheduler Service
+ * This class runs the timed steps of all games on a small shared pool of threads, instead of one sleeping
+ * thread per game. Every game has at most one pending step, scheduling a new one replaces it.
+ * The deadlines of the steps are kept in a timing wheel, so adding, cancelling and firing them costs the same
+ * no matter how many games are running.
+ */
+@Service
+public class SchedulerService {
+
+    private final Logger log = LoggerFactory.getLogger(SchedulerService.class);
+
+    private final ExecutorService executor;
+    private final TimingWheel timingWheel;
+
+    private final Map<Long, TimingWheel.Timeout> pending = new ConcurrentHashMap<>(); // the next step per game id
+
+    /** Start the pool and the timing wheel
+     * @param threads = threads that run the steps of all games together
+     * @param wheelTick = [ms] how precise the deadlines of the games are kept
+     * @param wheelSize = number of ticks the timing wheel covers before it starts over
+     */
+    @Autowired
+    public SchedulerService(@Value("${game.scheduler.threads:4}") int threads, @Value("${game.scheduler.tick:10}") long wheelTick,
+                            @Value("${game.scheduler.ticks:8192}") int wheelSize) {
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.timingWheel = new TimingWheel(wheelTick, wheelSize, executor);
+        this.timingWheel.start();
+    }
+
+    /** Run the next step of a game after a delay, a step of that game that is still waiting gets cancelled
+     *
+     * @param gameId = the game the step belongs to
+     * @param step = what needs to be done
+     * @param delay = [ms] time to wait before the step runs
+     */
+    public void schedule(Long gameId, Runnable step, long delay) {
+        Runnable task = () -> {
+            try {
+                step.run();
+            }
+            catch (RuntimeException e) {
+                log.error("Game {} stopped, a step failed", gameId, e);
+            }
+        };
+
+        // registered while the entry is locked, so a step that schedules the next one right away can not be overwritten
+        pending.compute(gameId, (key, previous) -> {
+            if (previous != null) {
+                previous.cancel();
+            }
+            return timingWheel.schedule(task, delay);
+        });
+    }
+
+    // run a task on the shared pool right away, for work that should not hold up the thread that triggers it
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    // cancel the step of a game that is still waiting (e.g. the game is over)
+    public void cancel(Long gameId) {
+        TimingWheel.Timeout timeout = pending.remove(gameId);
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    // check if a game has a step waiting
+    public boolean isScheduled(Long gameId) {
+        TimingWheel.Timeout timeout = pending.get(gameId);
+        return timeout != null && !timeout.isDone();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timingWheel.stop();
+        executor.shutdownNow();
+    }
+}
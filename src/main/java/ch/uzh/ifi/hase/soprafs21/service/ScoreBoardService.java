@@ -12,17 +12,25 @@ import org.springframework.web.server.ResponseStatusException;
 import javax.transaction.Transactional;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Transactional
 public class ScoreBoardService {
 
     private final ScoreBoardRepository scoreBoardRepository;
+    private final SchedulerService schedulerService;
+
+    // points that are not on the scoreboard yet, per game and player
+    private final Map<Long, Map<String, Integer>> pendingPoints = new ConcurrentHashMap<>();
 
     @Autowired
-    public ScoreBoardService(@Qualifier("scoreBoardRepository") ScoreBoardRepository scoreBoardRepository) {
+    public ScoreBoardService(@Qualifier("scoreBoardRepository") ScoreBoardRepository scoreBoardRepository, SchedulerService schedulerService) {
         this.scoreBoardRepository = scoreBoardRepository;
+        this.schedulerService = schedulerService;
     }
 
     // get a specific scoreboard, quality of life
@@ -40,6 +48,9 @@ public class ScoreBoardService {
         return value;
     }
 
+    // get the version of the scoreboard of a game without loading it, null if the game has none
+    public Long getScoreBoardVersion(Long gameId) { return scoreBoardRepository.findStateVersionByGameId(gameId); }
+
     // the method to create a scoreboard
     public ScoreBoard createScoreBoard(Lobby lobby) {
         ScoreBoard scoreBoard = new ScoreBoard(lobby.getMembers());
@@ -137,6 +148,50 @@ public class ScoreBoardService {
         scoreBoardRepository.saveAndFlush(scoreBoard);
     }
 
+    /** Put points on the scoreboard of a game in the background, points that come in before they are written go in the same write
+     *
+     * @param gameId = the game the scoreboard belongs to
+     * @param username = the player that gets the points
+     * @param points = how many points
+     */
+    public void queuePoints(Long gameId, String username, int points) {
+        boolean[] first = {false};
+        pendingPoints.compute(gameId, (key, value) -> {
+            if (value == null) {
+                value = new HashMap<>();
+                first[0] = true; // nothing waiting yet, so nobody is going to write it
+            }
+            value.merge(username, points, Integer::sum);
+            return value;
+        });
+        if (first[0]) {
+            schedulerService.execute(() -> writePoints(gameId));
+        }
+    }
+
+    // write the points that are waiting for a game, loaded fresh so a scoreboard held somewhere else can not overwrite them
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public synchronized void writePoints(Long gameId) {
+        Map<String, Integer> points = pendingPoints.remove(gameId);
+        if (points == null) {
+            return;
+        }
+        Optional<ScoreBoard> potScoreBoard = scoreBoardRepository.findByGameId(gameId);
+        if (potScoreBoard.isEmpty()) { // the game is gone
+            return;
+        }
+        ScoreBoard scoreBoard = potScoreBoard.get();
+        int[] temp = scoreBoard.getScore();
+        for (Map.Entry<String, Integer> entry : points.entrySet()) {
+            int index = scoreBoard.getPlayers().indexOf(entry.getKey());
+            if (index >= 0) { // a player that has left the game gets nothing
+                temp[index] += entry.getValue();
+            }
+        }
+        scoreBoard.setScore(temp);
+        fixRanking(scoreBoard);
+    }
+
     // fix ranking => changes the order within ranking after the changes to the score have been made
     private void fixRanking(ScoreBoard scoreBoard) {
         int[] sorted = Arrays.copyOf(scoreBoard.getScore(), scoreBoard.getScore().length);
@@ -0,0 +1,86 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Signal Service
+ * This class lets the services tell a running game that something happened it may be waiting for
+ * (e.g. the drawer picked a word or a player guessed it), so the game can move on right away instead of
+ * finding out on its next check. Every game has a counter of signals and a future that completes with the next one.
+ * The clients that long poll the game wait on futures of their own, so the game can tell them about a change it made
+ * itself without waking itself up.
+ */
+@Service
+public class SignalService {
+
+    private final Map<Long, CompletableFuture<Long>> nextSignals = new ConcurrentHashMap<>(); // the game waits on these
+    private final Map<Long, CompletableFuture<Long>> nextChanges = new ConcurrentHashMap<>(); // the long poll clients wait on these
+    private final Map<Long, Long> versions = new ConcurrentHashMap<>();
+
+    /** Get the future that completes with the next signal of a game. Take it before checking the state of the game,
+     * then a signal that comes in between is not missed.
+     *
+     * @param gameId = the game we are waiting for
+     * @return a future that completes with the number of signals the game has received
+     */
+    public CompletableFuture<Long> next(Long gameId) {
+        return nextSignals.computeIfAbsent(gameId, key -> new CompletableFuture<>());
+    }
+
+    // tell a game that something happened, everybody waiting for it wakes up
+    public void signal(Long gameId) {
+        if (gameId == null) {
+            return;
+        }
+        long version = versions.merge(gameId, 1L, Long::sum);
+        complete(nextSignals, gameId, version);
+        complete(nextChanges, gameId, version);
+    }
+
+    // tell the clients of a game that it changed, the game itself made the change and does not wake up
+    public void notifyClients(Long gameId) {
+        if (gameId == null) {
+            return;
+        }
+        complete(nextChanges, gameId, versions.merge(gameId, 1L, Long::sum));
+    }
+
+    private void complete(Map<Long, CompletableFuture<Long>> futures, Long gameId, long version) {
+        CompletableFuture<Long> future = futures.remove(gameId);
+        if (future != null) {
+            future.complete(version);
+        }
+    }
+
+    /** Get a future that completes as soon as the game has received a signal the caller has not seen yet
+     *
+     * @param gameId = the game we are waiting for
+     * @param version = the number of signals the caller has seen
+     * @return a completed future if the version is already different, otherwise the future of the next signal
+     */
+    public CompletableFuture<Long> changedSince(Long gameId, long version) {
+        CompletableFuture<Long> next = nextChanges.computeIfAbsent(gameId, key -> new CompletableFuture<>()); // taken before the version is read, then no signal is missed
+        long current = getVersion(gameId);
+        return current != version ? CompletableFuture.completedFuture(current) : next;
+    }
+
+    // the number of signals a game has received
+    public long getVersion(Long gameId) { return versions.getOrDefault(gameId, 0L); }
+
+    // forget a game that is over
+    public void remove(Long gameId) {
+        versions.remove(gameId);
+        CompletableFuture<Long> future = nextSignals.remove(gameId);
+        if (future != null) {
+            future.cancel(false);
+        }
+        future = nextChanges.remove(gameId);
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+}
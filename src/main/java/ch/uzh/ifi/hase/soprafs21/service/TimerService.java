@@ -6,31 +6,41 @@ import ch.uzh.ifi.hase.soprafs21.repository.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
 import javax.transaction.Transactional;
-import java.time.LocalDateTime;
-import java.time.LocalTime;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoUnit;
-import java.time.temporal.TemporalUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Timer Service
+ * The timers of the running games are kept in memory by the id of their game, so moving a clock forward does not
+ * need the database. A timer that changed is only marked and written by a write-behind task a moment later.
+ */
 @Service
 @Transactional
 public class TimerService {
 
+    private final Map<Long, Timer> liveTimers = new ConcurrentHashMap<>(); // the timers of the running games by game id
+    private final Set<Timer> changedTimers = ConcurrentHashMap.newKeySet(); // timers that still have to be saved
+
     private final TimerRepository timerRepository;
     private final RoundRepository roundRepository;
     private final GameRepository gameRepository;
+    private final ClockService clockService;
 
     @Autowired
-    public TimerService(@Qualifier("timerRepository") TimerRepository timerRepository, RoundRepository roundRepository, GameRepository gameRepository) {
+    public TimerService(@Qualifier("timerRepository") TimerRepository timerRepository, RoundRepository roundRepository, GameRepository gameRepository, ClockService clockService) {
         this.timerRepository = timerRepository;
         this.roundRepository = roundRepository;
         this.gameRepository = gameRepository;
+        this.clockService = clockService;
     }
 
     // get a specific timer
@@ -55,7 +65,7 @@ public class TimerService {
         } else {
             timer.setIsDrawing(true);
         }
-        timerRepository.saveAndFlush(timer);
+        changedTimers.add(timer);
     }
 
     // create a new timer
@@ -66,25 +76,66 @@ public class TimerService {
         return timer;
     }
 
-    // start the timer if it is not already running
+    // keep the timer of a game in memory while the game is running
+    public void register(Long gameId, Timer timer) {
+        if (timer != null) {
+            liveTimers.put(gameId, timer);
+        }
+    }
+
+    // the game is over, save its timer one last time and forget it
+    public void unregister(Long gameId) {
+        Timer timer = liveTimers.remove(gameId);
+        if (timer != null && changedTimers.remove(timer)) {
+            timerRepository.saveAndFlush(timer);
+        }
+    }
+
+    /** Get the timer a game is running on right now, without looking at the database
+     * @param gameId = the game of which the timer is needed
+     * @param saved = the timer as it was loaded with the game, used if the game is not running
+     * @return the live timer of the game, otherwise the saved one
+     */
+    public Timer getLiveTimer(Long gameId, Timer saved) {
+        Timer timer = liveTimers.get(gameId);
+        return timer != null ? timer : saved;
+    }
+
+    // write-behind task, saves the timers that changed since it last ran
+    @Scheduled(fixedDelay = 1000)
+    public void flushTimers() {
+        List<Timer> timers = new ArrayList<>();
+        for (Timer timer : changedTimers) {
+            if (changedTimers.remove(timer)) { // a change that comes in after this is saved the next time
+                timers.add(timer);
+            }
+        }
+        if (!timers.isEmpty()) {
+            timerRepository.saveAll(timers);
+            timerRepository.flush();
+        }
+    }
+
+    // start the timer if it is not already running, it is up after the time span of the current mode
     public void begin(Timer timer){
         if(isReady(timer)) {
-            timer.setStart(LocalTime.now(ZoneId.of("UTC")));
-            timerRepository.saveAndFlush(timer);
+            int timeSpan = timer.getIsDrawing() ? timer.getDrawingTimeSpan() : timer.getSelectTimeSpan();
+            timer.setDeadline(clockService.millis() + timeSpan * 1000L);
+            changedTimers.add(timer);
         }
     }
 
     // reset the timer in order to use it again
     public void reset(Timer timer){
         if(!isReady(timer)) {
-            timer.setStart(null);
-            timerRepository.saveAndFlush(timer);
+            timer.setDeadline(null);
+            changedTimers.add(timer);
         }
     }
 
     // check if the timer is ready to be started
     public boolean isReady(Timer timer) {
-        return timer.getStart() == null;
+        return timer.getDeadline() == null;
     }
 
     // check if the time we were supposed to wait has passed
@@ -92,45 +143,32 @@ public class TimerService {
 
     // get the time at which this round will end
     public String getEnd(Timer timer) {
-        Long time = (long) remainingTime(timer);
-        LocalDateTime end = LocalDateTime.now(ZoneId.of("UTC")).plus(time, ChronoUnit.MILLIS);
-        DateTimeFormatter formatter = new Standard().getDateTimeFormatter();
-        return end.format(formatter);
+        return new Standard().fromEpochMilli(clockService.millis() + remainingTime(timer));
     }
 
-    /** returns the remaining time by looking at the current mode (drawing or selecting), the starting time and the
-     * current time to determine the remaining time in seconds and milliseconds in this mode.
+    // get the current time of the clock the timers run on [ms since epoch]
+    public long now() { return clockService.millis(); }
+
+    /** returns the remaining time by comparing the deadline of the running timer with the current time
      * @param timer = we have to give the method the timer of whom
      *              we would like to know the remaining time
-     * @return remaining time in this mode
+     * @return remaining time in this mode [ms]
      */
     public int remainingTime(Timer timer){
-        LocalTime rightNow = LocalTime.now(ZoneId.of("UTC"));
-        return remainingTime(timer,rightNow);
+        return remainingTime(timer, clockService.millis());
     }
 
-    /** returns the remaining time by looking at the current mode (usually drawing), the starting time and the
-     * time past down to determine the remaining time in seconds and milliseconds in this mode.
+    /** returns the remaining time by comparing the deadline of the running timer with a point in time
      * @param timer = we have to give the method the timer of whom
      *              we would like to know the remaining time
-     * @param timeStamp = the time we would like it to get compared to
-     * @return remaining time in this mode
+     * @param time = the time we would like it to get compared to [ms since epoch]
+     * @return remaining time in this mode at that time [ms], 0 if the timer is not running
      */
-    public int remainingTime(Timer timer, LocalTime timeStamp){
-        double value = 0, tempMilli, tempSec, tempMin, tempHour, time;
-        if(!isReady(timer)) {
-            if(timer.getIsDrawing()) {
-                time = timer.getDrawingTimeSpan();
-            } else {
-                time = timer.getSelectTimeSpan();
-            }
-            tempMilli = Math.floor((timeStamp.getNano() - timer.getStart().getNano()) / Math.pow(10.0,6.0)) / Math.pow(10.0,3.0);
-            tempSec = timeStamp.getSecond() - timer.getStart().getSecond();
-            tempMin = (timeStamp.getMinute() - timer.getStart().getMinute()) * 60;
-            tempHour = (timeStamp.getHour() - timer.getStart().getHour()) * 3600;
-            value = Math.floor((time - (tempHour + tempMin + tempSec + tempMilli)) * 1000);
+    public int remainingTime(Timer timer, Long time){
+        if(isReady(timer)) {
+            return 0;
         }
-        return (int) Math.max(0,value);
+        return (int) Math.max(0, timer.getDeadline() - time);
     }
 
 
@@ -1,6 +1,10 @@
 package ch.uzh.ifi.hase.soprafs21.controller;
 import ch.uzh.ifi.hase.soprafs21.constant.*;
 import ch.uzh.ifi.hase.soprafs21.entity.*;
+import ch.uzh.ifi.hase.soprafs21.helper.DrawingSnapshot;
+import ch.uzh.ifi.hase.soprafs21.helper.LiveDrawing;
+import ch.uzh.ifi.hase.soprafs21.helper.StrokeCodec;
+import ch.uzh.ifi.hase.soprafs21.helper.StrokeCodecs;
 import ch.uzh.ifi.hase.soprafs21.rest.dto.*;
 import ch.uzh.ifi.hase.soprafs21.rest.mapper.ChatDTOMapper;
 import ch.uzh.ifi.hase.soprafs21.rest.mapper.DTOMapper;
@@ -17,12 +21,16 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Supplier;
 
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
@@ -30,7 +38,10 @@ import static org.mockito.ArgumentMatchers.notNull;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.doNothing;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import ch.uzh.ifi.hase.soprafs21.constant.GameModes;
 import ch.uzh.ifi.hase.soprafs21.constant.LobbyStatus;
@@ -157,6 +168,30 @@ public class GameControllerTest {
                 .andExpect(jsonPath("$.roundId", is(game.getRoundId().intValue())));
 
     }
+
+    @Test
+    void getGame_sameVersion_notModified() throws Exception {
+        Game game = new Game();
+        game.setId(2L);
+        given(gameService.getGameVersion(2L)).willReturn(7L);
+        given(gameService.getGame(Mockito.any())).willReturn(game);
+
+        // the first answer carries the version as ETag
+        mockMvc.perform(get("/games/2"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"game-7\""));
+
+        // the client asks again with it, the game is neither loaded nor mapped
+        mockMvc.perform(get("/games/2").header("If-None-Match", "\"game-7\""))
+                .andExpect(status().isNotModified());
+        Mockito.verify(gameService, Mockito.times(1)).getGame(Mockito.any());
+
+        // a newer version is sent in full
+        given(gameService.getGameVersion(2L)).willReturn(8L);
+        mockMvc.perform(get("/games/2").header("If-None-Match", "\"game-7\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"game-8\""));
+    }
     // Test the put drawing API
 /*
     @Test
@@ -248,6 +283,27 @@ public class GameControllerTest {
 
         mockMvc.perform(postRequest).andExpect(status().isOk()); }
 
+    @Test
+    void chatGet_afterCursor() throws Exception {
+        Message message = new Message();
+        message.setWriterName("Player 2");
+        message.setMessage("Horse");
+        message.setTimeStamp("2021-05-17 14:52:10:000");
+        message.setSequence(8);
+        Chat chat = new Chat();
+        chat.setChatId(2L);
+        chat.setLastSequence(8);
+        chat.setMessage(message);
+
+        given(chatService.getMessagesAfter(2L, 7L)).willReturn(chat);
+
+        mockMvc.perform(get("/games/2/chats").param("after", "7"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.cursor", is(8)))
+                .andExpect(jsonPath("$.messages", hasSize(1)))
+                .andExpect(jsonPath("$.messages[0].sequence", is(8)));
+    }
+
     // test guess/write API call
     @Test
     void chatPut() throws Exception {
@@ -290,7 +346,7 @@ public class GameControllerTest {
 
         given(gameService.getGame(Mockito.any())).willReturn(game);
         given(roundService.getRound(Mockito.any())).willReturn(round);
-        given(roundService.makeGuess(Mockito.any(), Mockito.any())).willReturn(false);
+        given(roundService.checkGuess(Mockito.any(), Mockito.any(), Mockito.anyInt())).willReturn(false);
 
         Message message = chatService.createMessage(inputMessage);
         chatService.addNewMessage(game.getId(), message );
@@ -304,6 +360,30 @@ public class GameControllerTest {
 
         mockMvc.perform(putRequest).andExpect(status().isOk()); }
 
+    @Test
+    void chatPut_rightGuess_notKeptInTheChat() throws Exception {
+        Game game = new Game();
+        game.setId(2L);
+
+        MessagePostDTO messagePostDTO = new MessagePostDTO();
+        messagePostDTO.setMessage("House");
+        messagePostDTO.setWriterName("Player 2");
+        messagePostDTO.setTimeStamp("2021-05-17 14:52:10:000");
+
+        given(gameService.getGuessPoints(2L)).willReturn(80);
+        given(roundService.checkGuess(Mockito.eq(2L), Mockito.any(), Mockito.eq(80))).willReturn(true);
+
+        mockMvc.perform(put("/games/2/chats").contentType(MediaType.APPLICATION_JSON).content(asJsonString(messagePostDTO)))
+                .andExpect(status().isOk())
+                .andExpect(content().string("true"));
+
+        Mockito.verify(gameService, Mockito.never()).getGame(Mockito.any()); // nothing is read from the database
+        Mockito.verify(chatService, Mockito.times(1)).queueBotMessage(2L, BotMessage.GUESSED_WORD, "Player 2");
+        Mockito.verify(scoreBoardService, Mockito.times(1)).queuePoints(2L, "Player 2", 80); // the scoreboard does not wait for the end of the turn
+        Mockito.verify(chatService, Mockito.never()).createMessage(Mockito.any());
+        Mockito.verify(roundService, Mockito.never()).getRound(Mockito.any());
+    }
+
     // test leaving a game
     @Test
     void quitGame() throws Exception {
@@ -446,6 +526,7 @@ public class GameControllerTest {
 
         given(roundService.getRound(Mockito.any())).willReturn(round);
         given(gameService.getGame(Mockito.any())).willReturn(game);
+        given(drawingService.getLiveDrawing(2L)).willReturn(Mockito.mock(LiveDrawing.class));
 
 
         MockHttpServletRequestBuilder putRequest = put("/games/2/drawing")
@@ -455,6 +536,32 @@ public class GameControllerTest {
 
         mockMvc.perform(putRequest).andExpect(status().isNoContent()); }
 
+    @Test
+    void painting_putrequest_afterTheDrawingPhase_rejected() throws Exception {
+        BrushStrokePutDTO brushStrokeDTO = new BrushStrokePutDTO();
+        brushStrokeDTO.setX(5);
+        brushStrokeDTO.setY(4);
+        brushStrokeDTO.setSize(15);
+        brushStrokeDTO.setColour("Black");
+        brushStrokeDTO.setTimeStamp("2021-05-17 14:52:10:000");
+
+        // the live drawing got closed while the request was on its way
+        LiveDrawing liveDrawing = Mockito.mock(LiveDrawing.class);
+        given(drawingService.getLiveDrawing(2L)).willReturn(liveDrawing);
+        given(drawingService.addStrokes(Mockito.eq(liveDrawing), Mockito.anyList())).willReturn(-1L);
+
+        mockMvc.perform(put("/games/2/drawing").contentType(MediaType.APPLICATION_JSON).content(asJsonString(List.of(brushStrokeDTO))))
+                .andExpect(status().isConflict());
+
+        // and once it is gone, the strokes can not end up in the drawing of the next painter either
+        given(drawingService.getLiveDrawing(2L)).willReturn(null);
+
+        mockMvc.perform(put("/games/2/drawing").contentType(MediaType.APPLICATION_JSON).content(asJsonString(List.of(brushStrokeDTO))))
+                .andExpect(status().isConflict());
+        Mockito.verify(drawingService, Mockito.never()).addStrokes(Mockito.any(Drawing.class), Mockito.any());
+        Mockito.verify(gameService, Mockito.never()).getGame(Mockito.any());
+    }
+
     @Test
     void painting_postrequest() throws Exception {
 
@@ -690,9 +797,282 @@ public class GameControllerTest {
 
         mockMvc.perform(putRequest).andExpect(status().isOk()); }
 
+    @Test
+    void state_oneAnswerForTheWholeGame() throws Exception {
+        ArrayList<String> players = new ArrayList<String>();
+        players.add("Player 1");
+        players.add("Player 2");
+
+        ScoreBoard scoreBoard = new ScoreBoard(players);
+        Game game = new Game();
+        game.setId(2L);
+        game.setRoundId(5L);
+        game.setScoreBoard(scoreBoard);
+
+        Round round = new Round();
+        round.setId(5L);
+        round.setStatus(RoundStatus.DRAWING);
+        round.setDrawerName("Player 1");
+        round.setWord("House");
+
+        Drawing drawing = new Drawing();
+        drawing.setId(1L);
+        BrushStroke brushStroke = new BrushStroke(5, 25, 10, "Black", 0L);
+        brushStroke.setSequence(4);
+        LiveDrawing liveDrawing = new LiveDrawing(2L, drawing, 0);
+        liveDrawing.append(List.of(brushStroke));
+
+        Message message = new Message();
+        message.setWriterName("Player 2");
+        message.setMessage("Horse");
+        message.setTimeStamp("2021-05-17 14:52:10:000");
+        Chat chat = new Chat();
+        chat.setMessage(message);
+
+        given(gameService.getStateVersion(2L)).willReturn(6L);
+        given(gameService.getGame(Mockito.any())).willReturn(game);
+        given(roundService.getRound(Mockito.any())).willReturn(round);
+        given(roundService.getChoices(Mockito.any(), Mockito.any())).willReturn(new ArrayList<>());
+        given(roundService.getLength(round)).willReturn(5);
+        given(drawingService.getLiveDrawing(2L)).willReturn(liveDrawing);
+        given(chatService.getNewMessages(2L, "2021-05-17 14:52:00:000")).willReturn(chat);
+
+        mockMvc.perform(get("/games/2/state").param("after", "0").param("since", "2021-05-17 14:52:00:000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.stateVersion", is(6)))
+                .andExpect(jsonPath("$.round.drawerName", is("Player 1")))
+                .andExpect(jsonPath("$.scoreBoard.players", is(players)))
+                .andExpect(jsonPath("$.wordLength", is(5)))
+                .andExpect(jsonPath("$.drawing.drawingId", is(1)))
+                .andExpect(jsonPath("$.drawing.brushStrokes", hasSize(1)))
+                .andExpect(jsonPath("$.chat.messages", hasSize(1)));
+
+        // the game is loaded once for everything
+        Mockito.verify(gameService, Mockito.times(1)).getGame(Mockito.any());
+    }
+
+    @Test
+    void update_longPoll_answersWithTheNewVersion() throws Exception {
+        Game game = new Game();
+        game.setId(2L);
+        game.setRoundId(5L);
+
+        Round round = new Round();
+        round.setId(5L);
+        round.setStatus(RoundStatus.SELECTING);
+        round.setDrawerName("Player 1");
+
+        given(gameService.getGame(Mockito.any())).willReturn(game);
+        given(roundService.getRound(Mockito.any())).willReturn(round);
+        given(roundService.getChoices(Mockito.any(), Mockito.any())).willReturn(new ArrayList<>());
+        given(gameService.getStateVersion(2L)).willReturn(3L);
+        // the state changed already, the service answers right away
+        given(gameService.awaitChange(Mockito.eq(2L), Mockito.eq(2L), Mockito.eq(10000L), Mockito.any())).willAnswer(invocation -> {
+            DeferredResult<Object> result = new DeferredResult<>();
+            result.setResult(invocation.<Supplier<Object>>getArgument(3).get());
+            return result;
+        });
+
+        MvcResult pending = mockMvc.perform(get("/games/2/update?version=2&waitMs=10000"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(pending))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-State-Version", "3"))
+                .andExpect(jsonPath("$.drawerName", is("Player 1")));
+    }
+
 
 
 
+    @Test
+    void drawing_getRequest_afterCursor() throws Exception {
+        Game game = new Game();
+        game.setId(2L);
+        game.setRoundId(5L);
+
+        BrushStroke brushStroke = new BrushStroke();
+        brushStroke.setId(3L);
+        brushStroke.setX(5);
+        brushStroke.setY(4);
+        brushStroke.setSize(15);
+        brushStroke.setColour("Black");
+        brushStroke.setSequence(2);
+        List<BrushStroke> brush = new ArrayList<>();
+        brush.add(brushStroke);
+
+        Drawing drawing = new Drawing();
+        drawing.setId(1L);
+        drawing.setDrawerName("Player1");
+        drawing.setBrushStrokes(brush);
+        drawing.setLastSequence(2);
+        List<Drawing> picture = new ArrayList<>();
+        picture.add(drawing);
+
+        Round round = new Round();
+        round.setId(5L);
+        round.setDrawings(picture);
+
+        given(gameService.getGame(Mockito.any())).willReturn(game);
+        given(roundService.getRound(Mockito.any())).willReturn(round);
+        given(drawingService.getStrokesAfter(Mockito.any(), Mockito.anyLong())).willReturn(brush);
+
+        MockHttpServletRequestBuilder getRequest = get("/games/2/drawing?after=1")
+                .contentType(MediaType.APPLICATION_JSON);
+
+        mockMvc.perform(getRequest).andExpect(status().isOk())
+                .andExpect(jsonPath("$.drawingId", is(1)))
+                .andExpect(jsonPath("$.cursor", is(2)))
+                .andExpect(jsonPath("$.brushStrokes", hasSize(1)))
+                .andExpect(jsonPath("$.brushStrokes[0].sequence", is(2)));
+    }
+
+    @Test
+    void drawing_getRequest_liveDrawing_servesSerializedDelta() throws Exception {
+        LiveDrawing liveDrawing = Mockito.mock(LiveDrawing.class);
+        given(drawingService.getLiveDrawing(Mockito.any())).willReturn(liveDrawing);
+        byte[] delta = "{\"drawingId\":1,\"cursor\":2,\"brushStrokes\":[]}".getBytes();
+        given(drawingService.getSerializedStrokesAfter(liveDrawing, 2, DrawingService.DELTA_JSON)).willReturn(delta);
+
+        MockHttpServletRequestBuilder getRequest = get("/games/2/drawing?after=2");
+
+        mockMvc.perform(getRequest).andExpect(status().isOk())
+                .andExpect(jsonPath("$.cursor", is(2)))
+                .andExpect(jsonPath("$.brushStrokes", hasSize(0)));
+        Mockito.verify(gameService, Mockito.never()).getGame(Mockito.any());
+    }
+
+    @Test
+    void drawing_binaryPutRequest_decodesStrokes() throws Exception {
+        LiveDrawing liveDrawing = Mockito.mock(LiveDrawing.class);
+        given(drawingService.getLiveDrawing(Mockito.any())).willReturn(liveDrawing);
+
+        BrushStroke brushStroke = new BrushStroke(5, 4, 15, "BLACK");
+        List<BrushStroke> brush = new ArrayList<>();
+        brush.add(brushStroke);
+
+        MockHttpServletRequestBuilder putRequest = put("/games/2/drawing")
+                .contentType(StrokeCodec.MEDIA_TYPE)
+                .content(StrokeCodecs.encodeBatch(brush));
+
+        mockMvc.perform(putRequest).andExpect(status().isNoContent());
+        Mockito.verify(drawingService, Mockito.times(1)).addStrokes(Mockito.eq(liveDrawing), Mockito.anyList());
+    }
+
+    @Test
+    void drawing_binaryPutRequest_invalidBody() throws Exception {
+        MockHttpServletRequestBuilder putRequest = put("/games/2/drawing")
+                .contentType(StrokeCodec.MEDIA_TYPE)
+                .content(new byte[]{5, 1});
+
+        mockMvc.perform(putRequest).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void drawing_putRequest_invalidTimeStamp() throws Exception {
+        BrushStrokePutDTO brushStrokeDTO = new BrushStrokePutDTO();
+        brushStrokeDTO.setX(5);
+        brushStrokeDTO.setY(4);
+        brushStrokeDTO.setSize(15);
+        brushStrokeDTO.setColour("BLACK");
+        brushStrokeDTO.setTimeStamp("17.05.2021 14:52");
+
+        MockHttpServletRequestBuilder putRequest = put("/games/2/drawing")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(asJsonString(List.of(brushStrokeDTO)));
+
+        mockMvc.perform(putRequest).andExpect(status().isBadRequest());
+        Mockito.verify(drawingService, Mockito.never()).addStrokes(Mockito.any(Drawing.class), Mockito.any());
+    }
+
+    @Test
+    void drawing_binaryPutRequest_timeOutOfRange() throws Exception {
+        byte[] body = {1, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x40,
+                0, 0, 30, 1, 0}; // one stroke at 2^62 milliseconds, far beyond any time stamp
+        MockHttpServletRequestBuilder putRequest = put("/games/2/drawing")
+                .contentType(StrokeCodec.MEDIA_TYPE)
+                .content(body);
+
+        mockMvc.perform(putRequest).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void drawing_binaryGetRequest_encodesDelta() throws Exception {
+        Game game = new Game();
+        game.setId(2L);
+        game.setRoundId(5L);
+
+        BrushStroke brushStroke = new BrushStroke(5, 4, 15, "BLACK");
+        brushStroke.setSequence(1);
+        List<BrushStroke> brush = new ArrayList<>();
+        brush.add(brushStroke);
+
+        Drawing drawing = new Drawing();
+        drawing.setId(1L);
+        drawing.setBrushStrokes(brush);
+        drawing.setLastSequence(1);
+        List<Drawing> picture = new ArrayList<>();
+        picture.add(drawing);
+
+        Round round = new Round();
+        round.setId(5L);
+        round.setDrawings(picture);
+
+        given(gameService.getGame(Mockito.any())).willReturn(game);
+        given(roundService.getRound(Mockito.any())).willReturn(round);
+        given(drawingService.getStrokesAfter(Mockito.any(), Mockito.anyLong())).willReturn(brush);
+
+        MockHttpServletRequestBuilder getRequest = get("/games/2/drawing?after=0")
+                .accept(StrokeCodec.MEDIA_TYPE);
+
+        mockMvc.perform(getRequest).andExpect(status().isOk())
+                .andExpect(content().bytes(StrokeCodec.encodeDelta(1L, 1, brush)));
+    }
+
+    @Test
+    void drawing_streamRequest_resumesFromLastEventId() throws Exception {
+        Game game = new Game();
+        game.setId(2L);
+
+        given(gameService.getGame(Mockito.any())).willReturn(game);
+        given(drawingService.subscribe(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyLong())).willReturn(new SseEmitter());
+
+        MockHttpServletRequestBuilder getRequest = get("/games/2/drawing/stream?after=3")
+                .header("Last-Event-ID", "4-17");
+
+        mockMvc.perform(getRequest).andExpect(status().isOk());
+        Mockito.verify(drawingService, Mockito.times(1)).subscribe(Mockito.eq(2L), Mockito.isNull(), Mockito.eq(4L), Mockito.eq(17L));
+    }
+
+    @Test
+    void chat_streamRequest_resumesFromLastEventId() throws Exception {
+        given(chatService.subscribe(Mockito.any(), Mockito.anyLong())).willReturn(new SseEmitter());
+
+        MockHttpServletRequestBuilder getRequest = get("/games/2/chats/stream?after=3")
+                .header("Last-Event-ID", "17");
+
+        mockMvc.perform(getRequest).andExpect(status().isOk());
+        Mockito.verify(chatService, Mockito.times(1)).subscribe(2L, 17L);
+    }
+
+    @Test
+    void drawing_snapshotRequest_returnsPngWithSequence() throws Exception {
+        Game game = new Game();
+        game.setId(2L);
+        byte[] png = {(byte) 0x89, 'P', 'N', 'G'};
+
+        given(gameService.getGame(Mockito.any())).willReturn(game);
+        given(drawingService.getSnapshot(Mockito.any(), Mockito.any())).willReturn(new DrawingSnapshot(4L, 17, png));
+
+        MockHttpServletRequestBuilder getRequest = get("/games/2/drawing/snapshot");
+
+        mockMvc.perform(getRequest).andExpect(status().isOk())
+                .andExpect(header().string("X-Drawing-Id", "4"))
+                .andExpect(header().string("X-Drawing-Sequence", "17"))
+                .andExpect(content().bytes(png));
+    }
+
     private String asJsonString(final Object object) {
         try {
             return new ObjectMapper().writeValueAsString(object);
@@ -0,0 +1,19 @@
+package ch.uzh.ifi.hase.soprafs21.helper;
+
+import ch.uzh.ifi.hase.soprafs21.entity.BrushStroke;
+
+import java.util.List;
+
+/**
+ * The client's side of the StrokeCodec, the server itself never encodes a batch or decodes a delta.
+ */
+public class StrokeCodecs {
+
+    private StrokeCodecs() {}
+
+    // encode a batch of strokes the way a drawer sends them
+    public static byte[] encodeBatch(List<BrushStroke> brushStrokes) { return StrokeCodec.encodeBatch(brushStrokes); }
+
+    // decode the answer of a drawing delta request the way a guesser reads it
+    public static List<BrushStroke> decodeDelta(byte[] bytes) { return StrokeCodec.decodeDelta(bytes); }
+}
@@ -1,6 +1,7 @@
 package ch.uzh.ifi.hase.soprafs21.repository;
 
 import ch.uzh.ifi.hase.soprafs21.constant.GameModes;
+import ch.uzh.ifi.hase.soprafs21.constant.GamePhase;
 import ch.uzh.ifi.hase.soprafs21.entity.Game;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,9 +9,12 @@ import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @DataJpaTest
 public class GameRepositoryIntegrationTest {
@@ -64,5 +68,55 @@ public class GameRepositoryIntegrationTest {
 
     }
 
-}
+    @Test
+    void findRunning_onlyStartedGames(){
+        Game running = new Game();
+        running.setId(2L);
+        running.setGameName("RunningGame");
+        running.setGameModes(GameModes.CLASSIC);
+        running.setTestphase(false);
+        entityManager.persist(running);
+
+        Game finished = new Game();
+        finished.setId(3L);
+        finished.setGameName("FinishedGame");
+        finished.setGameModes(GameModes.CLASSIC);
+        finished.setTestphase(false);
+        entityManager.persist(finished);
+        entityManager.flush();
 
+        // when
+        gameRepository.updateProgress(running.getId(), GamePhase.DRAWING, 1000L, 2, 1);
+        gameRepository.updateProgress(finished.getId(), GamePhase.DONE, null, 3, 0);
+        entityManager.clear();
+        List<Game> found = gameRepository.findRunning(GamePhase.DONE);
+
+        // then
+        assertEquals(1, found.size());
+        assertEquals(running.getId(), found.get(0).getId());
+        assertEquals(GamePhase.DRAWING, found.get(0).getPhase());
+        assertEquals(1000L, found.get(0).getPhaseDeadline());
+        assertEquals(2, found.get(0).getRoundIndex());
+        assertEquals(1, found.get(0).getPlayerIndex());
+    }
+
+    @Test
+    void findStateVersion_goesUpWithEveryChange(){
+        Game game = new Game();
+        game.setId(4L);
+        game.setGameName("VersionedGame");
+        game.setGameModes(GameModes.CLASSIC);
+        entityManager.persist(game);
+        entityManager.flush();
+        long first = gameRepository.findStateVersion(game.getId());
+
+        // when
+        game.setRoundTracker(1);
+        entityManager.flush();
+
+        // then
+        assertTrue(gameRepository.findStateVersion(game.getId()) > first);
+        assertNull(gameRepository.findStateVersion(5L));
+    }
+
+}
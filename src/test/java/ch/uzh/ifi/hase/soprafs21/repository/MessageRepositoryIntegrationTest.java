@@ -0,0 +1,83 @@
+package ch.uzh.ifi.hase.soprafs21.repository;
+
+import ch.uzh.ifi.hase.soprafs21.entity.ArchivedMessage;
+import ch.uzh.ifi.hase.soprafs21.entity.Message;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest
+public class MessageRepositoryIntegrationTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private ArchivedMessageRepository archivedMessageRepository;
+
+    private Message persistMessage(Long chatId, long sequence, String text) {
+        Message message = new Message();
+        message.setChatId(chatId);
+        message.setSequence(sequence);
+        message.setWriterName("Player 1");
+        message.setMessage(text);
+        message.setTimeStamp("2021-05-17 14:52:10:000"); // all at the same time, only the sequence orders them
+        entityManager.persist(message);
+        return message;
+    }
+
+    @Test
+    void findAfter_onlyNewerMessagesOfTheChat() {
+        persistMessage(1L, 2L, "second");
+        persistMessage(1L, 1L, "first");
+        persistMessage(1L, 3L, "third");
+        persistMessage(2L, 3L, "other chat");
+        entityManager.flush();
+
+        List<Message> found = messageRepository.findAfter(1L, 1L);
+
+        assertEquals(2, found.size());
+        assertEquals("second", found.get(0).getMessage());
+        assertEquals("third", found.get(1).getMessage());
+        assertTrue(messageRepository.findAfter(1L, 3L).isEmpty());
+    }
+
+    @Test
+    void findUpTo_theMessagesOutOfTheWindow() {
+        persistMessage(1L, 1L, "first");
+        persistMessage(1L, 2L, "second");
+        persistMessage(1L, 3L, "third");
+        entityManager.flush();
+
+        List<Message> found = messageRepository.findUpTo(1L, 2L);
+
+        assertEquals(2, found.size());
+        assertTrue(found.stream().allMatch(message -> message.getSequence() <= 2L));
+    }
+
+    @Test
+    void findBefore_pageOfTheArchiveNewestFirst() {
+        for (long sequence = 1; sequence <= 5; sequence++) {
+            Message message = persistMessage(1L, sequence, "message " + sequence);
+            entityManager.persist(new ArchivedMessage(message));
+        }
+        entityManager.flush();
+
+        List<ArchivedMessage> found = archivedMessageRepository.findBefore(1L, 4L, PageRequest.of(0, 2));
+
+        assertEquals(2, found.size());
+        assertEquals(3L, found.get(0).getSequence());
+        assertEquals(2L, found.get(1).getSequence());
+        assertTrue(archivedMessageRepository.findBefore(2L, Long.MAX_VALUE, PageRequest.of(0, 2)).isEmpty());
+    }
+}
@@ -6,6 +6,8 @@ import ch.uzh.ifi.hase.soprafs21.rest.dto.BrushStrokePutDTO;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * DTOMapperTest
@@ -20,6 +22,7 @@ public class BrushStrokeDTOMapperTest {
         brushStrokePutDTO.setSize(10);
         brushStrokePutDTO.setX(5);
         brushStrokePutDTO.setY(25);
+        brushStrokePutDTO.setTimeStamp("2021-05-17 14:57:11:000");
 
         //MAP PutDTO --> Brushstrocke Entity
         BrushStroke brushStroke = BrushStrokeDTOMapper.INSTANCE.convertBrushStrokePutDTOtoEntity(brushStrokePutDTO);
@@ -29,7 +32,40 @@ public class BrushStrokeDTOMapperTest {
         assertEquals(brushStrokePutDTO.getX(),brushStroke.getX());
         assertEquals(brushStrokePutDTO.getY(), brushStroke.getY());
         assertEquals(brushStrokePutDTO.getColour(), brushStroke.getColour());
+        assertEquals(brushStrokePutDTO.getTimeStamp(), brushStroke.getTimeStamp());
 
     }
 
+    @Test
+    void testBrushStroke_fromBrushStrokePutDTO_invalidTimeStamp() {
+        BrushStrokePutDTO missing = new BrushStrokePutDTO();
+        BrushStrokePutDTO unreadable = new BrushStrokePutDTO();
+        unreadable.setTimeStamp("17.05.2021 14:57");
+
+        // no stroke gets a made up time
+        assertThrows(IllegalArgumentException.class, () -> BrushStrokeDTOMapper.INSTANCE.convertBrushStrokePutDTOtoEntity(missing));
+        assertThrows(IllegalArgumentException.class, () -> BrushStrokeDTOMapper.INSTANCE.convertBrushStrokePutDTOtoEntity(unreadable));
+    }
+
+    @Test
+    void testBrushStroke_fromBrushStrokePutDTO_orderingKeySetOnce() {
+        BrushStrokePutDTO first = new BrushStrokePutDTO();
+        first.setTimeStamp("2021-05-17 14:57:11:000");
+        BrushStrokePutDTO second = new BrushStrokePutDTO();
+        second.setTimeStamp("2021-05-17 14:57:11:250");
+
+        BrushStroke firstStroke = BrushStrokeDTOMapper.INSTANCE.convertBrushStrokePutDTOtoEntity(first);
+        BrushStroke secondStroke = BrushStrokeDTOMapper.INSTANCE.convertBrushStrokePutDTOtoEntity(second);
+
+        // the key is computed while mapping, comparing only looks at the keys
+        assertEquals(250, secondStroke.getTimeKey() - firstStroke.getTimeKey());
+        assertTrue(firstStroke.compareTo(secondStroke) < 0);
+
+        // strokes drawn at the same time keep the order they were appended in
+        BrushStroke sameTime = BrushStrokeDTOMapper.INSTANCE.convertBrushStrokePutDTOtoEntity(second);
+        sameTime.setSequence(2);
+        secondStroke.setSequence(1);
+        assertTrue(secondStroke.compareTo(sameTime) < 0);
+    }
+
 }
@@ -22,8 +22,9 @@ public class DrawingDTOMapperTest {
         brushStroke.setX(5);
         brushStroke.setY(10);
         brushStroke.setSize(15);
-        brushStroke.setTimeStamp("a");
+        brushStroke.setTimeStamp("2021-05-17 14:52:10:000");
         brushStroke.setColour("BLACK");
+        brushStroke.setSequence(7);
 
         // MAP -> Create DrawingGetDTO
         DrawingGetDTO drawingGetDTO = DrawingDTOMapper.INSTANCE.convertEntityToDrawingGetDTO(brushStroke);
@@ -34,6 +35,7 @@ public class DrawingDTOMapperTest {
         assertEquals(brushStroke.getY(), drawingGetDTO.getY());
         assertEquals(brushStroke.getColour(), drawingGetDTO.getColour().toString());
         assertEquals(brushStroke.getTimeStamp(), drawingGetDTO.getTimeStamp());
+        assertEquals(brushStroke.getSequence(), drawingGetDTO.getSequence());
 
     }
 }
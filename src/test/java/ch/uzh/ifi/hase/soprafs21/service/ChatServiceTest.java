@@ -2,18 +2,23 @@ package ch.uzh.ifi.hase.soprafs21.service;
 
 
 
+import ch.uzh.ifi.hase.soprafs21.constant.BotMessage;
+import ch.uzh.ifi.hase.soprafs21.entity.ArchivedMessage;
 import ch.uzh.ifi.hase.soprafs21.entity.Chat;
 import ch.uzh.ifi.hase.soprafs21.entity.Message;
+import ch.uzh.ifi.hase.soprafs21.repository.ArchivedMessageRepository;
 import ch.uzh.ifi.hase.soprafs21.repository.ChatRepository;
 
 
 import ch.uzh.ifi.hase.soprafs21.repository.MessageRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.time.LocalTime;
@@ -31,9 +36,15 @@ public class ChatServiceTest {
     private MessageRepository messageRepository;
     @Mock
     private ChatRepository chatRepository ;
+    @Mock
+    private ArchivedMessageRepository archivedMessageRepository;
+    @Mock
+    private PushService pushService;
 
 
 
+    private static final int CHAT_WINDOW = 100; // chat.window of the application properties
+
     @InjectMocks
     private ChatService chatService;
     private Chat testChat;
@@ -44,6 +55,8 @@ public class ChatServiceTest {
     @BeforeEach
     public void setup() {
         MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(chatService, "chatWindow", CHAT_WINDOW);
+        ReflectionTestUtils.setField(chatService, "chatHistoryPage", 50);
 
         // given
         testChat = new Chat();
@@ -58,6 +71,7 @@ public class ChatServiceTest {
         // when -> any object is being save in the userRepository -> return the dummy testUser and the dummy testlobby
         Mockito.when(chatRepository.save(Mockito.any())).thenReturn(testChat);
         Mockito.when(chatRepository.findById(Mockito.any())).thenReturn(Optional.ofNullable(testChat));
+        Mockito.when(chatRepository.findForUpdate(Mockito.any())).thenReturn(Optional.ofNullable(testChat));
         Mockito.when(messageRepository.saveAndFlush(Mockito.any())).thenReturn(testMessage);
     }
 
@@ -97,6 +111,11 @@ public class ChatServiceTest {
         assertTrue(chat.getMessage().contains(testMessage2));
         assertEquals(testMessage2.getMessageId(), chat.getMessage().get(1).getMessageId());
 
+        // the message itself is saved once it has its place in the chat
+        ArgumentCaptor<Message> saved = ArgumentCaptor.forClass(Message.class);
+        Mockito.verify(messageRepository, Mockito.times(1)).save(saved.capture());
+        assertEquals(chat.getChatId(), saved.getValue().getChatId());
+        assertEquals(chat.getLastSequence(), saved.getValue().getSequence());
     }
     @Test
      void create_newMessage(){
@@ -193,6 +212,162 @@ public class ChatServiceTest {
         assertTrue(getMessages.getMessage().contains(newMessage1));
 
     }
+    @Test
+    void addNewMessage_countsTheSequence(){
+        Message newMessage = new Message();
+        newMessage.setTimeStamp("2021-05-17 14:54:10:000");
+        newMessage.setMessage("Test 89789");
+        chatService.addNewMessage(testChat.getChatId(), newMessage);
+        Message newMessage1 = new Message();
+        newMessage1.setTimeStamp("2021-05-17 14:54:10:000");
+        newMessage1.setMessage("Test 897889");
+        chatService.addNewMessage(testChat.getChatId(), newMessage1);
+
+        assertEquals(1L, newMessage.getSequence());
+        assertEquals(2L, newMessage1.getSequence());
+        assertEquals(testChat.getChatId(), newMessage1.getChatId());
+        assertEquals(2L, testChat.getLastSequence());
+    }
+
+    // a message of the test chat with the next sequence number
+    private Message nextMessage(String text) {
+        Message message = new Message();
+        message.setTimeStamp("2021-05-17 14:54:10:000"); // all the same time stamp, the sequence still tells them apart
+        message.setMessage(text);
+        chatService.addNewMessage(testChat.getChatId(), message);
+        return message;
+    }
+
+    @Test
+    void getMessagesAfter_onlyReadsTheTail(){
+        Message newMessage = nextMessage("Test 89789");
+        Message newMessage1 = nextMessage("Test 897889");
+        Mockito.when(messageRepository.findAfter(Mockito.eq(testChat.getChatId()), Mockito.anyLong()))
+                .thenReturn(new ArrayList<>(List.of(newMessage, newMessage1)));
+
+        Chat getMessages = chatService.getMessagesAfter(testChat.getChatId(), 1L);
+
+        assertEquals(List.of(newMessage1), getMessages.getMessage());
+        assertEquals(2L, getMessages.getLastSequence());
+    }
+
+    @Test
+    void getMessagesAfter_windowInMemory_noQuery(){
+        chatService.getMessagesAfter(testChat.getChatId(), 0L); // fills the window
+        Message newMessage = nextMessage("Test 89789");
+
+        Chat getMessages = chatService.getMessagesAfter(testChat.getChatId(), 0L);
+        Chat upToDate = chatService.getMessagesAfter(testChat.getChatId(), 1L);
+
+        assertEquals(List.of(newMessage), getMessages.getMessage());
+        assertTrue(upToDate.getMessage().isEmpty());
+        assertEquals(1L, upToDate.getLastSequence());
+        Mockito.verify(messageRepository, Mockito.times(1)).findAfter(Mockito.any(), Mockito.anyLong());
+    }
+
+    @Test
+    void getMessagesAfter_windowIsBounded(){
+        chatService.getMessagesAfter(testChat.getChatId(), 0L);
+        int window = CHAT_WINDOW;
+        for (int i = 0; i <= window; i++) {
+            nextMessage("Test " + i);
+        }
+
+        Chat getMessages = chatService.getMessagesAfter(testChat.getChatId(), 0L);
+
+        assertEquals(window, getMessages.getMessage().size());
+        assertEquals(2L, getMessages.getMessage().get(0).getSequence()); // the first one dropped out
+        assertEquals(window + 1L, getMessages.getLastSequence());
+    }
+
+    @Test
+    void addNewMessage_archivesTheMessagesOutOfTheWindow(){
+        testChat.setLastSequence(CHAT_WINDOW);
+        testMessage.setSequence(1L);
+        testMessage.setMessageId(3L);
+        Mockito.when(messageRepository.findUpTo(testChat.getChatId(), 1L)).thenReturn(new ArrayList<>(List.of(testMessage)));
+
+        Message newMessage = nextMessage("Test 89789");
+
+        Mockito.verify(archivedMessageRepository, Mockito.times(1)).saveAll(Mockito.any());
+        Mockito.verify(messageRepository, Mockito.times(1)).deleteAll(List.of(testMessage));
+        assertFalse(testChat.getMessage().contains(testMessage));
+        assertTrue(testChat.getMessage().contains(newMessage));
+    }
+
+    @Test
+    void getHistory_pageInWritingOrder(){
+        Message old = new Message();
+        old.setTimeStamp("2021-05-17 14:50:10:000");
+        old.setMessage("first");
+        old.setSequence(4L);
+        Message older = new Message();
+        older.setTimeStamp("2021-05-17 14:49:10:000");
+        older.setMessage("second");
+        older.setSequence(3L);
+        Mockito.when(archivedMessageRepository.findBefore(Mockito.eq(testChat.getChatId()), Mockito.eq(5L), Mockito.any()))
+                .thenReturn(List.of(new ArchivedMessage(old), new ArchivedMessage(older)));
+
+        Chat history = chatService.getHistory(testChat.getChatId(), 5L, 2);
+
+        assertEquals("second", history.getMessage().get(0).getMessage());
+        assertEquals("first", history.getMessage().get(1).getMessage());
+        assertEquals(3L, history.getLastSequence());
+    }
+
+    @Test
+    void flushBotMessages_oneBatchPerChat(){
+        List<Message> nomessage= new ArrayList<>();
+        testChat.setMessages(nomessage);
+
+        chatService.queueBotMessage(testChat.getChatId(), BotMessage.CURRENT_DRAWER, "User1");
+        chatService.queueBotMessage(testChat.getChatId(), BotMessage.GUESSED_WORD, "User2");
+        assertTrue(testChat.getMessage().isEmpty()); // nothing written before the batch
+
+        chatService.flushBotMessages(testChat.getChatId());
+        chatService.flushBotMessages(testChat.getChatId()); // the queue is empty now
+
+        assertEquals("The current drawer is User1.", testChat.getMessage().get(0).getMessage());
+        assertEquals("User2 has guessed the word.", testChat.getMessage().get(1).getMessage());
+        assertEquals(2L, testChat.getLastSequence());
+        Mockito.verify(chatRepository, Mockito.times(1)).findForUpdate(testChat.getChatId());
+        Mockito.verify(messageRepository, Mockito.times(1)).saveAll(Mockito.any());
+        Mockito.verify(messageRepository, Mockito.never()).saveAndFlush(Mockito.any());
+    }
+
+    @Test
+    void addNewMessage_publishedToTheChatTopic(){
+        chatService.getMessagesAfter(testChat.getChatId(), 0L);
+        Mockito.when(pushService.hasSubscribers("chat/1")).thenReturn(true);
+
+        nextMessage("Test 89789");
+        chatService.guessingWordMessage(testChat.getChatId(), "User1");
+
+        Mockito.verify(pushService, Mockito.times(1)).publish(Mockito.eq("chat/1"), Mockito.eq("chat"), Mockito.eq("1"), Mockito.any());
+        Mockito.verify(pushService, Mockito.times(1)).publish(Mockito.eq("chat/1"), Mockito.eq("chat"), Mockito.eq("2"), Mockito.any());
+    }
+
+    @Test
+    void closeChat_dropsTheWindowAndTheTopic(){
+        chatService.getMessagesAfter(testChat.getChatId(), 0L); // fills the window
+        chatService.closeChat(testChat.getChatId());
+        Mockito.when(pushService.hasSubscribers("chat/1")).thenReturn(true);
+
+        nextMessage("Test 89789"); // no window, nothing to publish
+        chatService.getMessagesAfter(testChat.getChatId(), 0L);
+
+        Mockito.verify(pushService, Mockito.times(1)).close("chat/1");
+        Mockito.verify(pushService, Mockito.never()).publish(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+        Mockito.verify(messageRepository, Mockito.times(2)).findAfter(Mockito.any(), Mockito.anyLong());
+    }
+
+    @Test
+    void subscribe_toTheChatTopic(){
+        chatService.subscribe(testChat.getChatId(), 0L);
+
+        Mockito.verify(pushService, Mockito.times(1)).subscribe(Mockito.eq("chat/1"), Mockito.any());
+    }
+
     @Test
     void test_enteringLobbyMessage(){
         List<Message> nomessage= new ArrayList<>();
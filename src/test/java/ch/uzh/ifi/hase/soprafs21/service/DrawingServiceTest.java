@@ -2,8 +2,13 @@ package ch.uzh.ifi.hase.soprafs21.service;
 
 
 import ch.uzh.ifi.hase.soprafs21.constant.Colours;
+import ch.uzh.ifi.hase.soprafs21.constant.GameModes;
 import ch.uzh.ifi.hase.soprafs21.constant.RoundStatus;
 import ch.uzh.ifi.hase.soprafs21.entity.*;
+import ch.uzh.ifi.hase.soprafs21.helper.DrawingSnapshot;
+import ch.uzh.ifi.hase.soprafs21.helper.LiveDrawing;
+import ch.uzh.ifi.hase.soprafs21.helper.Standard;
+import ch.uzh.ifi.hase.soprafs21.helper.StrokeCodecs;
 import ch.uzh.ifi.hase.soprafs21.repository.BrushStrokeRepository;
 import ch.uzh.ifi.hase.soprafs21.repository.DrawingRepository;
 import ch.uzh.ifi.hase.soprafs21.repository.RoundRepository;
@@ -32,6 +37,8 @@ public class DrawingServiceTest {
     private DrawingRepository drawingRepository;
     @Mock
     private BrushStrokeRepository brushStrokeRepository;
+    @Mock
+    private PushService pushService;
 
 
     @InjectMocks
@@ -217,6 +224,323 @@ public class DrawingServiceTest {
 
     }
 
+    @Test
+    void get_newDrawings_sortedDrawing_returnsTailInOrder() {
+        List<BrushStroke> strokes = new ArrayList<>();
+        String[] times = {"2021-05-17 14:57:10:000", "2021-05-17 14:57:11:000", "2021-05-17 14:57:11:000",
+                "2021-05-17 14:57:11:500", "2021-05-17 14:57:12:000"};
+        for (String time : times) {
+            BrushStroke stroke = new BrushStroke();
+            stroke.setTimeStamp(time);
+            strokes.add(stroke);
+        }
+        testdrawing.setBrushStrokes(strokes);
+
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss:SSS");
+        LocalDateTime dateTime = LocalDateTime.parse("2021-05-17 14:57:11:000", formatter);
+
+        List<BrushStroke> newStrokes = drawingService.getDrawing(testdrawing, dateTime);
+
+        assertEquals(strokes.subList(3, 5), newStrokes);
+        assertTrue(drawingService.getDrawing(testdrawing, LocalDateTime.parse("2021-05-17 14:57:12:000", formatter)).isEmpty());
+    }
+
+    @Test
+    void get_newDrawings_lateBatch_noStrokeSkipped() {
+        testdrawing.setBrushStrokes(new ArrayList<>());
+        Mockito.when(drawingRepository.saveAndFlush(Mockito.any())).thenReturn(testdrawing);
+        BrushStroke early = new BrushStroke();
+        early.setTimeStamp("2021-05-17 14:57:11:000");
+        BrushStroke late = new BrushStroke(); // a batch the drawer sent late, with an older time
+        late.setTimeStamp("2021-05-17 14:57:10:000");
+
+        drawingService.addStrokes(testdrawing, new ArrayList<>(List.of(early)));
+        drawingService.addStrokes(testdrawing, new ArrayList<>(List.of(late)));
+
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss:SSS");
+        List<BrushStroke> newStrokes = drawingService.getDrawing(testdrawing, LocalDateTime.parse("2021-05-17 14:57:10:500", formatter));
+
+        assertFalse(testdrawing.isTimeOrdered());
+        assertEquals(List.of(early, late), newStrokes); // the late one comes again rather than the early one never
+    }
+
+    @Test
+    void addStrokes_assignsSequence_andGetStrokesAfter_returnsOnlyNewer() {
+        testdrawing.setBrushStrokes(new ArrayList<>());
+        Mockito.when(drawingRepository.saveAndFlush(Mockito.any())).thenReturn(testdrawing);
+
+        ArrayList<BrushStroke> firstBatch = new ArrayList<>();
+        ArrayList<BrushStroke> secondBatch = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            BrushStroke stroke = new BrushStroke();
+            stroke.setTimeStamp("2021-05-17 14:57:10:000"); // same millisecond for all of them
+            if (i < 2) { firstBatch.add(stroke); } else { secondBatch.add(stroke); }
+        }
+        drawingService.addStrokes(testdrawing, firstBatch);
+        drawingService.addStrokes(testdrawing, secondBatch);
+
+        assertEquals(3, testdrawing.getLastSequence());
+        assertEquals(1, testdrawing.getBrushStrokes().get(0).getSequence());
+        assertEquals(3, testdrawing.getBrushStrokes().get(2).getSequence());
+
+        assertEquals(3, drawingService.getStrokesAfter(testdrawing, 0).size());
+        assertEquals(secondBatch, drawingService.getStrokesAfter(testdrawing, 2));
+        assertTrue(drawingService.getStrokesAfter(testdrawing, 3).isEmpty());
+        // a cursor of an earlier, longer drawing gets the whole drawing
+        assertEquals(3, drawingService.getStrokesAfter(testdrawing, 10).size());
+    }
+
+    @Test
+    void addStrokes_leavesTheBatch_andGetStrokesAfter_copies() {
+        testdrawing.setBrushStrokes(new ArrayList<>());
+        Mockito.when(drawingRepository.saveAndFlush(Mockito.any())).thenReturn(testdrawing);
+
+        BrushStroke later = new BrushStroke();
+        later.setTimeStamp("2021-05-17 14:57:11:000");
+        BrushStroke earlier = new BrushStroke();
+        earlier.setTimeStamp("2021-05-17 14:57:10:000");
+        ArrayList<BrushStroke> batch = new ArrayList<>(List.of(later, earlier));
+
+        drawingService.addStrokes(testdrawing, batch);
+        List<BrushStroke> strokes = drawingService.getStrokesAfter(testdrawing, 0);
+        BrushStroke latest = new BrushStroke();
+        latest.setTimeStamp("2021-05-17 14:57:12:000");
+        drawingService.addStrokes(testdrawing, new ArrayList<>(List.of(latest)));
+
+        assertSame(later, batch.get(0)); // the drawing is sorted, the batch of the caller is not
+        assertSame(earlier, testdrawing.getBrushStrokes().get(0));
+        assertEquals(2, strokes.size()); // not a view of the drawing that grew since
+    }
+
+    @Test
+    void addStrokes_insertsOnlyNewStrokes() {
+        Mockito.when(drawingRepository.saveAndFlush(Mockito.any())).thenReturn(testdrawing);
+
+        BrushStroke newStroke = new BrushStroke();
+        newStroke.setTimeStamp("2021-05-17 14:57:11:000");
+        ArrayList<BrushStroke> newStrokes = new ArrayList<>();
+        newStrokes.add(newStroke);
+
+        drawingService.addStrokes(testdrawing, newStrokes);
+
+        assertEquals(testdrawing.getId(), newStroke.getDrawingId());
+        assertEquals(2, testdrawing.getBrushStrokes().size());
+        Mockito.verify(brushStrokeRepository, Mockito.times(1)).saveAll(newStrokes);
+    }
+
+    @Test
+    void liveDrawing_keepsStrokesInMemory_untilFlushed() {
+        List<Drawing> drawings = new ArrayList<>();
+        drawings.add(testdrawing);
+        testround.setDrawings(drawings);
+        testround.setIndex(0);
+        testdrawing.getBrushStrokes().get(0).setSequence(1);
+        testdrawing.setLastSequence(1);
+
+        LiveDrawing liveDrawing = drawingService.openLiveDrawing(5L, GameModes.CLASSIC, testround);
+        assertSame(liveDrawing, drawingService.getLiveDrawing(5L));
+
+        BrushStroke later = new BrushStroke(1, 1, 2, "BLACK");
+        later.setTimeStamp("2021-05-17 14:57:12:000");
+        BrushStroke earlier = new BrushStroke(2, 2, 2, "RED");
+        earlier.setTimeStamp("2021-05-17 14:57:11:000");
+        List<BrushStroke> batch = new ArrayList<>();
+        batch.add(later);
+        batch.add(earlier);
+
+        assertEquals(3, drawingService.addStrokes(liveDrawing, batch));
+        Mockito.verify(brushStrokeRepository, Mockito.never()).saveAll(Mockito.any());
+
+        // the batch is appended in order of time
+        List<BrushStroke> newStrokes = liveDrawing.getStrokesAfter(1);
+        assertEquals(2, newStrokes.size());
+        assertEquals(2, newStrokes.get(0).getSequence());
+        assertEquals(earlier.getTimeStamp(), newStrokes.get(0).getTimeStamp());
+        assertEquals("RED", newStrokes.get(0).getColour());
+        assertEquals(testdrawing.getId(), newStrokes.get(1).getDrawingId());
+        assertEquals(2, liveDrawing.getUnflushedCount());
+
+        drawingService.closeLiveDrawing(5L);
+
+        assertNull(drawingService.getLiveDrawing(5L));
+        assertEquals(0, liveDrawing.getUnflushedCount());
+        Mockito.verify(brushStrokeRepository, Mockito.times(1)).saveAll(Mockito.any());
+        Mockito.verify(drawingRepository, Mockito.times(1)).updateLastSequence(testdrawing.getId(), 3L);
+
+        // a request that got the live drawing before it was closed does not lose its strokes silently
+        List<BrushStroke> tooLate = new ArrayList<>();
+        tooLate.add(new BrushStroke(3, 3, 2, "BLACK"));
+        assertEquals(-1, drawingService.addStrokes(liveDrawing, tooLate));
+        assertEquals(0, liveDrawing.getUnflushedCount());
+        assertEquals(3, liveDrawing.getLastSequence());
+    }
+
+    @Test
+    void liveDrawing_lateBatch_cursorByTimeSkipsNothing() {
+        List<Drawing> drawings = new ArrayList<>();
+        drawings.add(testdrawing);
+        testround.setDrawings(drawings);
+        testround.setIndex(0);
+        testdrawing.getBrushStrokes().get(0).setSequence(1);
+        testdrawing.setLastSequence(1);
+        LiveDrawing liveDrawing = drawingService.openLiveDrawing(5L, GameModes.CLASSIC, testround);
+
+        BrushStroke onTime = new BrushStroke(1, 1, 2, "BLACK");
+        onTime.setTimeStamp("2021-05-17 14:57:12:000");
+        drawingService.addStrokes(liveDrawing, List.of(onTime));
+        BrushStroke late = new BrushStroke(2, 2, 2, "BLACK"); // a batch that arrives after a newer one
+        late.setTimeStamp("2021-05-17 14:57:11:000");
+        BrushStroke lateToo = new BrushStroke(3, 3, 2, "BLACK");
+        lateToo.setTimeStamp("2021-05-17 14:57:11:200");
+        drawingService.addStrokes(liveDrawing, List.of(late, lateToo));
+
+        long after = liveDrawing.getSequenceAtTime(new Standard().toEpochMilli("2021-05-17 14:57:11:500"));
+
+        assertFalse(liveDrawing.isTimeOrdered());
+        assertEquals(1, after); // the stroke at 14:57:12 is still after the cursor
+        drawingService.closeLiveDrawing(5L);
+        Mockito.verify(drawingRepository, Mockito.times(1)).markTimeUnordered(testdrawing.getId());
+    }
+
+    @Test
+    void liveDrawing_addStrokes_publishesToSubscribers() {
+        List<Drawing> drawings = new ArrayList<>();
+        drawings.add(testdrawing);
+        testround.setDrawings(drawings);
+        testround.setIndex(0);
+        testdrawing.getBrushStrokes().get(0).setSequence(1);
+        testdrawing.setLastSequence(1);
+        Mockito.when(pushService.hasSubscribers("drawing/5")).thenReturn(true);
+
+        LiveDrawing liveDrawing = drawingService.openLiveDrawing(5L, GameModes.CLASSIC, testround);
+        List<BrushStroke> batch = new ArrayList<>();
+        batch.add(new BrushStroke(1, 1, 2, "BLACK"));
+        drawingService.addStrokes(liveDrawing, batch);
+
+        // once to start over with the new drawing, once for the new stroke
+        Mockito.verify(pushService, Mockito.times(1)).publish(Mockito.eq("drawing/5"), Mockito.eq("drawing"), Mockito.eq("1-1"), Mockito.any());
+        Mockito.verify(pushService, Mockito.times(1)).publish(Mockito.eq("drawing/5"), Mockito.eq("drawing"), Mockito.eq("1-2"), Mockito.any());
+        assertEquals(2, batch.get(0).getSequence());
+    }
+
+    @Test
+    void getSerializedStrokesAfter_sharedUntilAppend() {
+        List<Drawing> drawings = new ArrayList<>();
+        drawings.add(testdrawing);
+        testround.setDrawings(drawings);
+        testround.setIndex(0);
+        testdrawing.getBrushStrokes().get(0).setSequence(1);
+        testdrawing.setLastSequence(1);
+
+        LiveDrawing liveDrawing = drawingService.openLiveDrawing(5L, GameModes.CLASSIC, testround);
+        byte[] first = drawingService.getSerializedStrokesAfter(liveDrawing, 0, DrawingService.DELTA_BINARY);
+
+        // identical polls (and every cursor before the drawing) share the same bytes
+        assertSame(first, drawingService.getSerializedStrokesAfter(liveDrawing, 0, DrawingService.DELTA_BINARY));
+        assertSame(first, drawingService.getSerializedStrokesAfter(liveDrawing, 99, DrawingService.DELTA_BINARY));
+        assertEquals(1, StrokeCodecs.decodeDelta(first).size());
+
+        List<BrushStroke> batch = new ArrayList<>();
+        batch.add(new BrushStroke(10, 10, 4, "RED"));
+        drawingService.addStrokes(liveDrawing, batch);
+
+        // the append invalidates the cached answer
+        byte[] second = drawingService.getSerializedStrokesAfter(liveDrawing, 0, DrawingService.DELTA_BINARY);
+        assertNotSame(first, second);
+        assertEquals(2, StrokeCodecs.decodeDelta(second).size());
+        assertEquals(1, StrokeCodecs.decodeDelta(drawingService.getSerializedStrokesAfter(liveDrawing, 1, DrawingService.DELTA_BINARY)).size());
+    }
+
+    @Test
+    void getSnapshot_liveDrawing_coversNewStrokes() {
+        List<Drawing> drawings = new ArrayList<>();
+        drawings.add(testdrawing);
+        testround.setDrawings(drawings);
+        testround.setIndex(0);
+        testdrawing.getBrushStrokes().get(0).setSequence(1);
+        testdrawing.setLastSequence(1);
+
+        LiveDrawing liveDrawing = drawingService.openLiveDrawing(5L, GameModes.CLASSIC, testround);
+        DrawingSnapshot first = drawingService.getSnapshot(5L, null);
+        assertEquals(testdrawing.getId(), first.getDrawingId());
+        assertEquals(1, first.getSequence());
+
+        List<BrushStroke> batch = new ArrayList<>();
+        batch.add(new BrushStroke(10, 10, 4, "RED"));
+        drawingService.addStrokes(liveDrawing, batch);
+        DrawingSnapshot second = drawingService.getSnapshot(5L, null);
+
+        // the picture is a PNG and includes the new stroke
+        assertEquals(2, second.getSequence());
+        assertEquals((byte) 0x89, second.getPng()[0]);
+        assertEquals((byte) 'P', second.getPng()[1]);
+        assertEquals((byte) 'N', second.getPng()[2]);
+        assertEquals((byte) 'G', second.getPng()[3]);
+        assertSame(second, drawingService.getSnapshot(5L, null));
+    }
+
+    @Test
+    void simplify_dropsCollinearPoints_keepsBrushChanges() {
+        List<BrushStroke> batch = new ArrayList<>();
+        for (int i = 0; i <= 10; i++) { // a straight black line
+            BrushStroke stroke = new BrushStroke(i * 10, i * 5, 3, "BLACK");
+            stroke.setTimeStamp(String.format("2021-05-17 14:57:10:%03d", i));
+            batch.add(stroke);
+        }
+        BrushStroke corner = new BrushStroke(100, 100, 3, "BLACK"); // the line turns
+        corner.setTimeStamp("2021-05-17 14:57:10:011");
+        batch.add(corner);
+        BrushStroke red = new BrushStroke(100, 101, 3, "RED"); // another colour starts a new line
+        red.setTimeStamp("2021-05-17 14:57:10:012");
+        batch.add(red);
+
+        List<BrushStroke> simplified = drawingService.simplify(batch, GameModes.CLASSIC);
+
+        assertEquals(4, simplified.size());
+        assertSame(batch.get(0), simplified.get(0));
+        assertSame(batch.get(10), simplified.get(1));
+        assertSame(corner, simplified.get(2));
+        assertSame(red, simplified.get(3));
+    }
+
+    @Test
+    void simplify_keepsTheEndsOfLinesAPauseApart() {
+        List<BrushStroke> batch = new ArrayList<>();
+        for (int i = 0; i < 5; i++) { // a line, the pen is lifted and a second line goes on in the same direction
+            BrushStroke first = new BrushStroke(i * 10, 0, 3, "BLACK");
+            first.setTimeStamp(String.format("2021-05-17 14:57:10:%03d", i));
+            batch.add(first);
+        }
+        for (int i = 0; i < 5; i++) {
+            BrushStroke second = new BrushStroke(100 + i * 10, 0, 3, "BLACK");
+            second.setTimeStamp(String.format("2021-05-17 14:57:11:%03d", i));
+            batch.add(second);
+        }
+
+        List<BrushStroke> simplified = drawingService.simplify(batch, GameModes.CLASSIC);
+
+        // no line is drawn through the gap between the two
+        assertEquals(4, simplified.size());
+        assertSame(batch.get(4), simplified.get(1));
+        assertSame(batch.get(5), simplified.get(2));
+    }
+
+    @Test
+    void simplify_keepsPointsOutsideTolerance() {
+        List<BrushStroke> batch = new ArrayList<>();
+        int[][] points = {{0, 0}, {10, 0}, {20, 5}, {30, 0}, {40, 0}};
+        for (int i = 0; i < points.length; i++) {
+            BrushStroke stroke = new BrushStroke(points[i][0], points[i][1], 3, "BLACK");
+            stroke.setTimeStamp(String.format("2021-05-17 14:57:10:%03d", i));
+            batch.add(stroke);
+        }
+
+        List<BrushStroke> simplified = drawingService.simplify(batch, GameModes.POKEMON);
+
+        assertTrue(simplified.contains(batch.get(2)));
+        assertEquals(5, simplified.size());
+    }
+
     @Test
     void get_no_newDrawings_Emptydrawing() {
         List<BrushStroke> empty = new ArrayList<>();
@@ -1,11 +1,14 @@
 package ch.uzh.ifi.hase.soprafs21.service;
 
 
+import ch.uzh.ifi.hase.soprafs21.constant.BotMessage;
 import ch.uzh.ifi.hase.soprafs21.constant.GameModes;
+import ch.uzh.ifi.hase.soprafs21.constant.GamePhase;
 import ch.uzh.ifi.hase.soprafs21.constant.LobbyStatus;
 import ch.uzh.ifi.hase.soprafs21.constant.RoundStatus;
 import ch.uzh.ifi.hase.soprafs21.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs21.entity.*;
+import ch.uzh.ifi.hase.soprafs21.helper.GameProgress;
 import ch.uzh.ifi.hase.soprafs21.repository.GameRepository;
 import ch.uzh.ifi.hase.soprafs21.repository.LobbyRepository;
 import ch.uzh.ifi.hase.soprafs21.repository.RoundRepository;
@@ -16,10 +19,15 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -44,6 +52,14 @@ public class GameServiceTest {
     @Mock
     private ChatService chatService;
     @Mock
+    private DrawingService drawingService;
+    @Mock
+    private SchedulerService schedulerService;
+    @Spy
+    private SignalService signalService = new SignalService();
+    @Mock
+    private ClockService clockService;
+    @Mock
     private Thread thread;
 
 
@@ -65,6 +81,8 @@ public class GameServiceTest {
     @BeforeEach
     public void setup() {
         MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(gameService, "longPollTimeout", 30000L);
+        Mockito.when(clockService.millis()).thenReturn(1000000L);
 
         // given
         testUser = new User();
@@ -116,6 +134,7 @@ public class GameServiceTest {
         Mockito.when(lobbyRepository.findById(Mockito.any())).thenReturn(Optional.ofNullable(testLobby));
         Mockito.when(gameRepository.findById(Mockito.any())).thenReturn(Optional.ofNullable(testgame));
         Mockito.when(gameRepository.save(Mockito.any())).thenReturn(testgame);
+        Mockito.when(timerService.getLiveTimer(Mockito.any(), Mockito.any())).thenAnswer(invocation -> invocation.getArgument(1));
 
 
     }
@@ -194,12 +213,12 @@ public class GameServiceTest {
         Mockito.when(roundService.getRound(Mockito.any())).thenReturn(testRound);
         Mockito.when(roundRepository.saveAndFlush(Mockito.any())).thenReturn(testRound);
 
-        gameService.set_testgames(testgame);
-        gameService.run();
+        gameService.runGame(testgame);
 
 
 
         assertEquals(RoundStatus.DONE, testRound.getStatus());
+        Mockito.verify(drawingService, Mockito.times(1)).closeDrawingTopic(testgame.getId()); // the streams end with the game
 
     }
 
@@ -220,16 +239,14 @@ public class GameServiceTest {
         Mockito.doNothing().when(scoreBoardService).addPoints(Mockito.any(), Mockito.any(), Mockito.anyInt());
         Mockito.doNothing().when(roundService).setNewPainter(Mockito.any());
 
-        Mockito.doNothing().when(chatService).currentDrawerMessage(Mockito.any(), Mockito.anyString());
-        Mockito.doNothing().when(chatService).revealingSolutionMessage(Mockito.any(), Mockito.anyString());
+        Mockito.doNothing().when(chatService).queueBotMessage(Mockito.any(), Mockito.any(), Mockito.anyString());
 
         Mockito.doNothing().when(roundService).resetChoice(Mockito.any());
         Mockito.doNothing().when(roundService).changePhase(Mockito.any());
         
 
 
-        gameService.set_testgames(testgame);
-        gameService.run();
+        gameService.runGame(testgame);
 
 
 
@@ -282,6 +299,222 @@ public class GameServiceTest {
 
     }
 
+    @Test
+    void create_aGame_schedulesFirstStep(){
+        testLobby.setMembers("User1");
+        testLobby.setMembers("User2");
+        testgame.setTestphase(false);
+        Mockito.when(timerService.createTimer(testLobby.getTimer())).thenReturn(testTimer);
+        Mockito.when(scoreBoardService.createScoreBoard(Mockito.any())).thenReturn(testScoreboard);
+        Mockito.when(userRepository.findByUsername(Mockito.any())).thenReturn(testUser);
+
+        gameService.createGame(testLobby);
+
+        // no thread of its own, the first step runs on the shared scheduler
+        Mockito.verify(schedulerService, Mockito.times(1)).schedule(Mockito.eq(testgame.getId()), Mockito.any(), Mockito.eq(0L));
+    }
+
+    @Test
+    void create_aGame_executorMode_runsGameOnItsOwnThread(){
+        ReflectionTestUtils.setField(gameService, "runnerMode", "executor");
+        ReflectionTestUtils.setField(gameService, "runnerThreads", 2);
+        testLobby.setMembers("User1");
+        testLobby.setMembers("User2");
+        testgame.setTestphase(false);
+        testgame.setNumberOfRounds(-1);
+        Mockito.when(timerService.createTimer(testLobby.getTimer())).thenReturn(testTimer);
+        Mockito.when(scoreBoardService.createScoreBoard(Mockito.any())).thenReturn(testScoreboard);
+        Mockito.when(userRepository.findByUsername(Mockito.any())).thenReturn(testUser);
+        Mockito.when(roundService.getRound(Mockito.any())).thenReturn(testRound);
+
+        gameService.createGame(testLobby);
+
+        // the game we created is the one that ran, not whatever another thread left behind
+        Mockito.verify(roundRepository, Mockito.timeout(5000)).saveAndFlush(testRound);
+        Mockito.verify(schedulerService, Mockito.never()).schedule(Mockito.any(), Mockito.any(), Mockito.anyLong());
+        assertEquals(RoundStatus.DONE, testRound.getStatus());
+        gameService.shutdown();
+    }
+
+    @Test
+    void step_selecting_waitsForTheDrawer(){
+        ArrayList<String> players = new ArrayList<String>();
+        players.add("User1");
+        players.add("User2");
+        testgame.setPlayers(players);
+        testgame.setTestphase(false);
+        Mockito.when(timerService.done(Mockito.any())).thenReturn(false);
+        Mockito.when(timerService.remainingTime(Mockito.any())).thenReturn(5000);
+        Mockito.when(roundService.getRound(Mockito.any())).thenReturn(testRound);
+
+        GameProgress progress = new GameProgress(testgame);
+        progress.setRound(testRound);
+        progress.setPhase(GamePhase.SELECTING);
+
+        // nothing picked yet, the step is due again when the time is up
+        assertEquals(5000, gameService.step(progress));
+        assertEquals(GamePhase.SELECTING, progress.getPhase());
+
+        // the drawer picked a word, the drawing starts before the time is up
+        testRound.setWord("House");
+        CompletableFuture<Long> wakeUp = signalService.next(testgame.getId());
+        assertEquals(5000, gameService.step(progress));
+        assertEquals(GamePhase.DRAWING, progress.getPhase());
+        assertEquals(1, gameService.getStateVersion(testgame.getId())); // only the new phase is news for the clients
+        assertFalse(wakeUp.isDone()); // the game does not wake itself up for its own new phase
+        Mockito.verify(drawingService, Mockito.times(1)).openLiveDrawing(testgame.getId(), GameModes.CLASSIC, testRound);
+        Mockito.verify(roundService, Mockito.never()).makeChoiceForUser(Mockito.any());
+    }
+
+    @Test
+    void runGame_wakesUpOnSignal() throws InterruptedException {
+        ArrayList<String> players = new ArrayList<String>();
+        players.add("User1");
+        players.add("User2");
+        testgame.setPlayers(players);
+        testgame.setTestphase(false);
+        testgame.setNumberOfRounds(1);
+        testRound.setPlayers(players);
+        testRound.setHasGuessed(new boolean[]{false, false});
+        AtomicBoolean timeUp = new AtomicBoolean(false);
+        Mockito.when(timerService.done(Mockito.any())).thenAnswer(invocation -> timeUp.get());
+        Mockito.when(timerService.remainingTime(Mockito.any())).thenReturn(60000);
+        Mockito.when(roundService.createRound(Mockito.any())).thenReturn(testRound);
+        Mockito.when(roundService.getRound(Mockito.any())).thenReturn(testRound);
+
+        Thread runner = new Thread(() -> gameService.runGame(testgame));
+        runner.start();
+
+        // the drawer picks a word and a player guesses it, neither waits for the minute to pass
+        Mockito.verify(roundService, Mockito.timeout(5000)).changePhase(testRound);
+        testRound.setWord("House");
+        signalService.signal(testgame.getId());
+        Mockito.verify(drawingService, Mockito.timeout(5000)).openLiveDrawing(testgame.getId(), GameModes.CLASSIC, testRound);
+        testRound.setHasGuessed(new boolean[]{false, true});
+        signalService.signal(testgame.getId());
+        Mockito.verify(chatService, Mockito.timeout(5000)).queueBotMessage(testgame.getId(), BotMessage.SOLUTION, "House");
+        Mockito.verify(scoreBoardService, Mockito.timeout(5000)).writePoints(testgame.getId()); // the painter gets the reward right away
+        Mockito.verify(chatService, Mockito.timeout(5000).atLeastOnce()).flushBotMessages(testgame.getId()); // written once per step
+
+        // the second drawer runs out of time in both phases
+        Mockito.verify(roundService, Mockito.timeout(5000).times(3)).changePhase(testRound);
+        timeUp.set(true);
+        signalService.signal(testgame.getId());
+        Mockito.verify(drawingService, Mockito.timeout(5000).times(2)).openLiveDrawing(testgame.getId(), GameModes.CLASSIC, testRound);
+        signalService.signal(testgame.getId());
+
+        runner.join(5000);
+        assertFalse(runner.isAlive());
+        assertEquals(RoundStatus.DONE, testRound.getStatus());
+    }
+
+    @Test
+    void step_drawing_endsWhenEverybodyGuessed(){
+        ArrayList<String> players = new ArrayList<String>();
+        players.add("User1");
+        players.add("User2");
+        players.add("User3");
+        testgame.setPlayers(players);
+        testgame.setTestphase(false);
+        testRound.setHasGuessed(new boolean[]{false, true, true});
+        Mockito.when(timerService.done(Mockito.any())).thenReturn(false);
+        Mockito.when(timerService.remainingTime(Mockito.any())).thenReturn(30000);
+        Mockito.when(roundService.getRound(Mockito.any())).thenReturn(testRound);
+
+        GameProgress progress = new GameProgress(testgame);
+        progress.setRound(testRound);
+        progress.setPhase(GamePhase.DRAWING);
+
+        assertEquals(0, gameService.step(progress));
+        assertEquals(GamePhase.REVEALING, progress.getPhase());
+
+        // the new phase is saved, so the game could be resumed from it
+        Mockito.verify(gameRepository, Mockito.times(1)).updateProgress(Mockito.eq(testgame.getId()), Mockito.eq(GamePhase.REVEALING),
+                Mockito.eq(1000000L), Mockito.eq(0), Mockito.eq(0)); // due right away, on the clock of the timers
+    }
+
+    @Test
+    void resumeGames_continuesWhereTheGameStopped(){
+        ArrayList<String> players = new ArrayList<String>();
+        players.add("User1");
+        players.add("User2");
+        testgame.setPlayers(players);
+        testgame.setTestphase(false);
+        testgame.setRoundId(testRound.getId());
+        testgame.setPhase(GamePhase.DRAWING);
+        testgame.setPhaseDeadline(1000000L - 1000);
+        testgame.setPlayerIndex(1);
+        ArrayList<Game> running = new ArrayList<Game>();
+        running.add(testgame);
+        Mockito.when(gameRepository.findRunning(GamePhase.DONE)).thenReturn(running);
+        Mockito.when(roundService.getRound(testRound.getId())).thenReturn(testRound);
+
+        gameService.resumeGames();
+
+        // the drawing is reloaded and the overdue step runs right away
+        Mockito.verify(drawingService, Mockito.times(1)).openLiveDrawing(testgame.getId(), GameModes.CLASSIC, testRound);
+        Mockito.verify(schedulerService, Mockito.times(1)).schedule(Mockito.eq(testgame.getId()), Mockito.any(), Mockito.eq(0L));
+    }
+
+    @Test
+    void resumeGames_waitsForTheDeadlineOnTheClock(){
+        ArrayList<String> players = new ArrayList<String>();
+        players.add("User1");
+        players.add("User2");
+        testgame.setPlayers(players);
+        testgame.setTestphase(false);
+        testgame.setRoundId(testRound.getId());
+        testgame.setPhase(GamePhase.SELECTING);
+        testgame.setPhaseDeadline(1000000L + 3000);
+        ArrayList<Game> running = new ArrayList<Game>();
+        running.add(testgame);
+        Mockito.when(gameRepository.findRunning(GamePhase.DONE)).thenReturn(running);
+        Mockito.when(roundService.getRound(testRound.getId())).thenReturn(testRound);
+
+        gameService.resumeGames();
+
+        Mockito.verify(schedulerService, Mockito.times(1)).schedule(Mockito.eq(testgame.getId()), Mockito.any(), Mockito.eq(3000L));
+    }
+
+    @Test
+    void awaitChange_answersRightAwayWhenTheClientIsBehind(){
+        signalService.signal(testgame.getId());
+
+        DeferredResult<String> result = gameService.awaitChange(testgame.getId(), 0, 10000, () -> "state");
+
+        assertEquals("state", result.getResult());
+    }
+
+    @Test
+    void awaitChange_waitsForTheNextChange(){
+        Mockito.doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(schedulerService).execute(Mockito.any());
+        signalService.signal(testgame.getId());
+
+        DeferredResult<String> result = gameService.awaitChange(testgame.getId(), 1, 10000, () -> "state");
+        assertFalse(result.hasResult());
+
+        // the drawer picked a word
+        signalService.signal(testgame.getId());
+        assertEquals("state", result.getResult());
+    }
+
+    @Test
+    void startPhase_usesTheLiveTimer(){
+        Timer liveTimer = new Timer();
+        testgame.setTimer(testTimer); // the copy that was loaded from the database
+        Mockito.when(timerService.getLiveTimer(testgame.getId(), testTimer)).thenReturn(liveTimer);
+
+        gameService.endPhase(testgame);
+        gameService.startPhase(testgame);
+
+        Mockito.verify(timerService, Mockito.times(1)).reset(liveTimer);
+        Mockito.verify(timerService, Mockito.times(1)).begin(liveTimer);
+        Mockito.verify(timerService, Mockito.never()).begin(testTimer);
+    }
+
     @Test
     void addpoints_methode(){
 
@@ -165,7 +165,7 @@ public class LobbyServiceTest {
         createdLobby.setMembers("delete");
 
 
-        lobbyService.removeLobbyMembers(testLobby.getId(), "delete", false);
+        assertFalse(lobbyService.removeLobbyMembers(testLobby.getId(), "delete", false));
         Mockito.verify(userRepository, Mockito.times(2)).save(Mockito.any());
 
         assertEquals(LobbyStatus.OPEN, createdLobby.getStatus());
@@ -298,7 +298,7 @@ public class LobbyServiceTest {
         testLobby.setPassword(null);
         testLobby.setMembers(testUser.getUsername());
 
-        lobbyService.removeLobbyMembers(testLobby.getId(), testUser.getUsername(), true);
+        assertTrue(lobbyService.removeLobbyMembers(testLobby.getId(), testUser.getUsername(), true));
 
 
         Mockito.verify(lobbyRepository, Mockito.times(1)).delete(Mockito.any());
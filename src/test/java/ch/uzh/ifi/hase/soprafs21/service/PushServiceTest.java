@@ -0,0 +1,74 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PushServiceTest {
+
+    private PushService pushService;
+
+    @BeforeEach
+    public void setup() {
+        pushService = new PushService(2, 300000);
+    }
+
+    @Test
+    void subscribe_queuesTheGreetingBeforeLaterEvents() {
+        List<Runnable> sends = new ArrayList<>();
+        pushService = new PushService(sends::add, 300000);
+
+        SseEmitter emitter = pushService.subscribe("drawing/1", SseEmitter.event().id("1-0").name("drawing").data("greeting"));
+        pushService.publish("drawing/1", "drawing", "1-1", "data");
+
+        assertNotNull(emitter);
+        assertTrue(pushService.hasSubscribers("drawing/1"));
+        assertFalse(pushService.hasSubscribers("drawing/2"));
+        assertEquals(1, sends.size()); // nothing is sent on the calling thread, one thread sends the greeting and then the event
+    }
+
+    @Test
+    void publish_withoutSubscribers_doesNothing() {
+        assertDoesNotThrow(() -> pushService.publish("drawing/1", "drawing", "1-1", "data"));
+        assertFalse(pushService.hasSubscribers("drawing/1"));
+    }
+
+    @Test
+    void close_removesAllSubscribers() {
+        pushService.subscribe("drawing/1", null);
+        pushService.subscribe("drawing/1", null);
+        pushService.publish("drawing/1", "drawing", "1-1", "data");
+
+        pushService.close("drawing/1");
+
+        assertFalse(pushService.hasSubscribers("drawing/1"));
+    }
+
+    @Test
+    void publish_onlyQueuesTheEvents() {
+        List<Runnable> sends = new ArrayList<>();
+        pushService = new PushService(sends::add, 300000);
+        pushService.subscribe("drawing/1", null);
+
+        pushService.publish("drawing/1", "drawing", "1-1", "data");
+        pushService.publish("drawing/1", "drawing", "1-2", "data");
+
+        assertEquals(1, sends.size()); // one thread sends both events of the topic, in order
+    }
+
+    @Test
+    void publish_dropsTheTopicWithItsLastStream() {
+        pushService = new PushService(Runnable::run, 300000);
+        SseEmitter emitter = pushService.subscribe("drawing/1", null);
+        emitter.complete(); // the client went away
+
+        pushService.publish("drawing/1", "drawing", "1-1", "data");
+
+        assertFalse(pushService.hasSubscribers("drawing/1"));
+    }
+}
@@ -6,15 +6,19 @@ import ch.uzh.ifi.hase.soprafs21.constant.GameModes;
 import ch.uzh.ifi.hase.soprafs21.constant.RoundStatus;
 import ch.uzh.ifi.hase.soprafs21.entity.*;
 import ch.uzh.ifi.hase.soprafs21.repository.*;
+import ch.uzh.ifi.hase.soprafs21.helper.GuessMatcher;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import java.util.Optional;
 
@@ -29,6 +33,10 @@ public class RoundServiceTest {
     private DrawingRepository drawingRepository;
     @Mock
     private GameRepository gameRepository;
+    @Mock
+    private SignalService signalService;
+    @Mock
+    private SchedulerService schedulerService;
 
 
     @InjectMocks
@@ -231,10 +239,35 @@ public class RoundServiceTest {
         testround.setIndex(0);
         testround.setStatus(RoundStatus.SELECTING);
         testround.setWord(null);
+        testround.setGameId(4L);
         roundService.makeChoice(testround, testround.getDrawerName(), 0);
 
         assertEquals(testround.getWords().get(0), testround.getWord());
+        Mockito.verify(signalService, Mockito.times(1)).signal(4L); // the game does not wait for its next check
+
+    }
 
+    @Test
+    void makechoice_signalsAfterCommit() {
+        testround.setIndex(0);
+        testround.setStatus(RoundStatus.SELECTING);
+        testround.setWord(null);
+        testround.setGameId(4L);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            roundService.makeChoice(testround, testround.getDrawerName(), 0);
+
+            // a step woken up now could read the round without the word
+            Mockito.verify(signalService, Mockito.never()).signal(Mockito.any());
+
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCommit();
+            }
+            Mockito.verify(signalService, Mockito.times(1)).signal(4L);
+        }
+        finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
     }
 
     @Test
@@ -358,6 +391,68 @@ public class RoundServiceTest {
         assertFalse(roundService.makeGuess(testMessage, testround));
     }
 
+    @Test
+    void checkGuess_decidedInMemory() {
+        testround.setGameId(1L);
+        roundService.openGuessMatcher(testround);
+        Message testMessage = new Message();
+        testMessage.setWriterName(testround.getPlayers().get(2));
+        testMessage.setMessage("  hOuSe ");
+
+        assertTrue(roundService.checkGuess(1L, testMessage, 80));
+        assertFalse(roundService.checkGuess(1L, testMessage, 70)); // only the first right guess counts
+        assertFalse(roundService.checkGuess(2L, testMessage, 80)); // that game is not drawing
+        Mockito.verify(roundRepository, Mockito.never()).findById(Mockito.any());
+        Mockito.verify(signalService, Mockito.times(1)).signal(1L);
+    }
+
+    @Test
+    void checkGuess_savedInTheBackground() {
+        testround.setGameId(1L);
+        roundService.openGuessMatcher(testround);
+        List<Runnable> saves = new ArrayList<>();
+        Mockito.doAnswer(invocation -> saves.add(invocation.getArgument(0))).when(schedulerService).execute(Mockito.any());
+        Message testMessage = new Message();
+        testMessage.setWriterName(testround.getPlayers().get(2));
+        testMessage.setMessage("House");
+        Message testMessage2 = new Message();
+        testMessage2.setWriterName(testround.getPlayers().get(3));
+        testMessage2.setMessage("house");
+
+        roundService.checkGuess(1L, testMessage, 80);
+        roundService.checkGuess(1L, testMessage2, 60);
+        assertEquals(1, saves.size()); // the second guess goes along with the first write
+        saves.get(0).run();
+
+        // the guesses and the points in one write, nothing else is saved
+        Mockito.verify(roundRepository, Mockito.times(1)).updateGuesses(Mockito.eq(2L),
+                Mockito.eq(new boolean[]{false, false, true, true}), Mockito.eq(new int[]{0, 0, 80, 60}), Mockito.anyLong());
+        Mockito.verify(roundRepository, Mockito.never()).saveAndFlush(Mockito.any());
+
+        // the game gets them from memory at the end of the turn
+        roundService.applyGuesses(testround);
+        assertEquals(60, testround.getGotPoints()[3]);
+    }
+
+    @Test
+    void closeGuessMatcher_noMoreGuesses() {
+        testround.setGameId(1L);
+        roundService.openGuessMatcher(testround);
+        Message testMessage = new Message();
+        testMessage.setWriterName(testround.getPlayers().get(2));
+        testMessage.setMessage("House");
+
+        roundService.resetHasGuessed(testround);
+
+        assertFalse(roundService.checkGuess(1L, testMessage, 80));
+    }
+
+    @Test
+    void normalize_foldsCaseSpacesAndAccents() {
+        assertEquals("creme brulee", GuessMatcher.normalize("  Crème   Brûlée "));
+        assertEquals("house", GuessMatcher.normalize("HOUSE"));
+    }
+
     @Test
     void resetTheGuessBools() {
         boolean[] guessed = {true, true, true, true};
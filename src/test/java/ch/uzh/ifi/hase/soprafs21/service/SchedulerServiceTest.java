@@ -0,0 +1,79 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SchedulerServiceTest {
+
+    private SchedulerService schedulerService;
+
+    @BeforeEach
+    public void setup() {
+        schedulerService = new SchedulerService(4, 10, 8192);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        schedulerService.shutdown();
+    }
+
+    @Test
+    void schedule_runsStepsThatScheduleTheNextOne() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(3);
+        AtomicInteger steps = new AtomicInteger();
+        Runnable[] step = new Runnable[1];
+        step[0] = () -> {
+            steps.incrementAndGet();
+            done.countDown();
+            if (steps.get() < 3) {
+                schedulerService.schedule(1L, step[0], 0);
+            }
+        };
+
+        schedulerService.schedule(1L, step[0], 0);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(3, steps.get());
+    }
+
+    @Test
+    void schedule_replacesTheWaitingStep() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicInteger first = new AtomicInteger();
+
+        schedulerService.schedule(1L, first::incrementAndGet, 60000);
+        assertTrue(schedulerService.isScheduled(1L));
+        schedulerService.schedule(1L, done::countDown, 0);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, first.get());
+    }
+
+    @Test
+    void cancel_removesTheWaitingStep() {
+        schedulerService.schedule(2L, () -> fail("cancelled steps do not run"), 60000);
+
+        schedulerService.cancel(2L);
+
+        assertFalse(schedulerService.isScheduled(2L));
+    }
+
+    @Test
+    void schedule_delayedStepRunsWhenItIsDue() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        long start = System.nanoTime();
+
+        schedulerService.schedule(3L, done::countDown, 100);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 100); // never early
+        assertFalse(schedulerService.isScheduled(3L));
+    }
+}
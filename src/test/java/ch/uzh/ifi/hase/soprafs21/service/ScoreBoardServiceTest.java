@@ -25,6 +25,9 @@ public class ScoreBoardServiceTest {
     @Mock
     private ScoreBoardRepository scoreBoardRepository;
 
+    @Mock
+    private SchedulerService schedulerService;
+
 
 
     @InjectMocks
@@ -257,4 +260,32 @@ public class ScoreBoardServiceTest {
          assertEquals(newscores[3],createdScoreboard.getScore()[3]);
     }
 
+    @Test
+    void queuedPoints_writtenInOneGo(){
+        ScoreBoard createdScoreboard = scoreBoardService.createScoreBoard(testLobby);
+        int [] newscores = {200,500,600,50};
+        createdScoreboard.setScore(newscores);
+        Mockito.when(scoreBoardRepository.findByGameId(3L)).thenReturn(Optional.of(createdScoreboard));
+
+        scoreBoardService.queuePoints(3L, createdScoreboard.getPlayers().get(0), 40);
+        scoreBoardService.queuePoints(3L, createdScoreboard.getPlayers().get(2), 30);
+        scoreBoardService.queuePoints(3L, createdScoreboard.getPlayers().get(0), 35);
+        scoreBoardService.queuePoints(3L, "Left the game", 20);
+
+        // one write is enough for everything that came in before it
+        Mockito.verify(schedulerService, Mockito.times(1)).execute(Mockito.any());
+        scoreBoardService.writePoints(3L);
+
+        assertEquals(275,createdScoreboard.getScore()[0]);
+        assertEquals(500,createdScoreboard.getScore()[1]);
+        assertEquals(630,createdScoreboard.getScore()[2]);
+        assertEquals(50,createdScoreboard.getScore()[3]);
+        assertEquals(0,createdScoreboard.getRanking()[2]);
+
+        // nothing is written twice
+        scoreBoardService.writePoints(3L);
+        assertEquals(275,createdScoreboard.getScore()[0]);
+        Mockito.verify(scoreBoardRepository, Mockito.times(1)).findByGameId(3L);
+    }
+
 }
\ No newline at end of file
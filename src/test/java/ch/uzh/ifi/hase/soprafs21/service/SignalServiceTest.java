@@ -0,0 +1,78 @@
+package ch.uzh.ifi.hase.soprafs21.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SignalServiceTest {
+
+    private SignalService signalService;
+
+    @BeforeEach
+    public void setup() {
+        signalService = new SignalService();
+    }
+
+    @Test
+    void signal_completesTheWaitingFuture() {
+        CompletableFuture<Long> next = signalService.next(1L);
+        assertSame(next, signalService.next(1L));
+        assertFalse(next.isDone());
+
+        signalService.signal(1L);
+
+        assertTrue(next.isDone());
+        assertEquals(1L, next.join());
+        assertEquals(1L, signalService.getVersion(1L));
+        assertNotSame(next, signalService.next(1L)); // the next signal gets a new future
+    }
+
+    @Test
+    void signal_onlyWakesItsOwnGame() {
+        CompletableFuture<Long> other = signalService.next(2L);
+
+        signalService.signal(1L);
+        signalService.signal(null);
+
+        assertFalse(other.isDone());
+        assertEquals(0L, signalService.getVersion(2L));
+    }
+
+    @Test
+    void remove_forgetsTheGame() {
+        CompletableFuture<Long> next = signalService.next(1L);
+        signalService.signal(1L);
+
+        signalService.remove(1L);
+
+        assertEquals(0L, signalService.getVersion(1L));
+        assertTrue(next.isDone());
+    }
+
+    @Test
+    void changedSince_completesOnlyForNewerVersions() {
+        signalService.signal(1L);
+
+        assertTrue(signalService.changedSince(1L, 0).isDone());
+        CompletableFuture<Long> waiting = signalService.changedSince(1L, 1);
+        assertFalse(waiting.isDone());
+
+        signalService.signal(1L);
+        assertEquals(2L, waiting.join());
+    }
+
+    @Test
+    void notifyClients_doesNotWakeTheGame() {
+        CompletableFuture<Long> game = signalService.next(1L);
+        CompletableFuture<Long> client = signalService.changedSince(1L, 0);
+
+        signalService.notifyClients(1L);
+
+        assertFalse(game.isDone());
+        assertEquals(1L, client.join());
+        assertEquals(1L, signalService.getVersion(1L));
+    }
+}
@@ -16,6 +16,7 @@ import org.springframework.web.server.ResponseStatusException;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -25,6 +26,8 @@ public class TimerServiceTest {
 
     @Mock
     private TimerRepository timerRepository;
+    @Mock
+    private ClockService clockService;
 
 
 
@@ -51,6 +54,7 @@ public class TimerServiceTest {
         Mockito.when(timerRepository.save(Mockito.any())).thenReturn(testTimer);
         Mockito.when(timerRepository.findById(Mockito.any())).thenReturn(Optional.ofNullable(testTimer));
         Mockito.when(timerRepository.saveAndFlush(Mockito.any())).thenReturn(testTimer);
+        Mockito.when(clockService.millis()).thenReturn(1000000L);
 
     }
 
@@ -114,7 +118,7 @@ public class TimerServiceTest {
     }
     @Test
     void create_new_Timer3(){
-        testTimer.setStart(null);
+        testTimer.setDeadline(null);
         testTimer.setDrawingTimeSpan(50);
         Mockito.when(timerRepository.save(Mockito.any())).thenReturn(testTimer);
 
@@ -126,12 +130,20 @@ public class TimerServiceTest {
         assertTrue(testTimer.toString().contains("can be run"));
     }
 
+    @Test
+    void toString_runningTimer_showsTheDeadline(){
+        testTimer.setDeadline(1621263130000L);
+
+        // no wall clock involved, the remaining time is up to the TimerService
+        assertTrue(testTimer.toString().contains("is running until 2021-05-17 14:52:10:000"));
+    }
+
     @Test
      void testbegin(){
-        testTimer.setStart(null);
+        testTimer.setDeadline(null);
         timerService.begin(testTimer);
 
-        assertNotNull(testTimer.getStart());
+        assertNotNull(testTimer.getDeadline());
 
     }
 
@@ -139,23 +151,23 @@ public class TimerServiceTest {
      void testbegin_secondcondition(){
         timerService.begin(testTimer);
         timerService.begin(testTimer);
-        assertNotNull(testTimer.getStart());
+        assertNotNull(testTimer.getDeadline());
     }
 
     @Test
      void testreset(){
         timerService.begin(testTimer);
-        assertNotNull(testTimer.getStart());
+        assertNotNull(testTimer.getDeadline());
         timerService.reset(testTimer);
-        assertNull(testTimer.getStart());
+        assertNull(testTimer.getDeadline());
 
 
     }
     @Test
      void testreset_secondcondition()    {
-        testTimer.setStart(null);
+        testTimer.setDeadline(null);
         timerService.reset(testTimer);
-        assertNull(testTimer.getStart());
+        assertNull(testTimer.getDeadline());
     }
 
     @Test
@@ -208,4 +220,59 @@ public class TimerServiceTest {
 
     }
 
+    @Test
+    void remainingTime_clockAdvances(){
+        timerService.begin(testTimer);
+        assertEquals(60000, timerService.remainingTime(testTimer));
+        assertFalse(timerService.done(testTimer));
+
+        // let the time pass without sleeping
+        Mockito.when(clockService.millis()).thenReturn(1000000L + 59750L);
+        assertEquals(250, timerService.remainingTime(testTimer));
+        assertFalse(timerService.done(testTimer));
+
+        Mockito.when(clockService.millis()).thenReturn(1000000L + 61000L);
+        assertEquals(0, timerService.remainingTime(testTimer));
+        assertTrue(timerService.done(testTimer));
+    }
+
+    @Test
+    void getEnd_isTheDeadline(){
+        timerService.begin(testTimer);
+        Mockito.when(clockService.millis()).thenReturn(1000000L + 20000L);
+
+        // the end does not move while the time passes
+        assertEquals(new Standard().fromEpochMilli(1000000L + 60000L), timerService.getEnd(testTimer));
+    }
+
+    @Test
+    void begin_reset_savedByWriteBehind(){
+        timerService.begin(testTimer);
+        timerService.reset(testTimer);
+        timerService.changePhase(testTimer);
+
+        // moving the clock does not touch the database
+        Mockito.verify(timerRepository, Mockito.never()).saveAndFlush(Mockito.any());
+
+        // all the changes are written at once, and only once
+        timerService.flushTimers();
+        timerService.flushTimers();
+        Mockito.verify(timerRepository, Mockito.times(1)).saveAll(List.of(testTimer));
+    }
+
+    @Test
+    void liveTimer_registeredWhileRunning(){
+        Timer saved = new Timer(60);
+        timerService.register(7L, testTimer);
+
+        assertSame(testTimer, timerService.getLiveTimer(7L, saved));
+        assertSame(saved, timerService.getLiveTimer(8L, saved));
+
+        // the last change is saved when the game is over
+        timerService.begin(testTimer);
+        timerService.unregister(7L);
+        Mockito.verify(timerRepository, Mockito.times(1)).saveAndFlush(testTimer);
+        assertSame(saved, timerService.getLiveTimer(7L, saved));
+    }
+
 }